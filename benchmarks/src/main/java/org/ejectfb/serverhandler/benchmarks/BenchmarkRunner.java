@@ -0,0 +1,170 @@
+package org.ejectfb.serverhandler.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Запуск бенчмарков с профилировщиком GC и сохранением базовых результатов.
+ * <pre>
+ *   java -jar benchmarks.jar [опции JMH]                    запуск и вывод результатов
+ *   java -jar benchmarks.jar save &lt;имя&gt; [опции JMH]        запуск и сохранение в baselines/&lt;имя&gt;.properties
+ *   java -jar benchmarks.jar compare &lt;имя&gt; [опции JMH]     запуск и сравнение с сохранёнными результатами
+ * </pre>
+ * Опции JMH передаются как есть, например "-f 1 -wi 2 -i 3 StatsParsing".
+ * compare завершается с кодом 1, если результат хуже базового больше чем на -Dbaseline.threshold процентов
+ * (по умолчанию 10) с учётом погрешности. Каталог базовых результатов задаёт -Dbaselines.dir.
+ */
+public class BenchmarkRunner {
+    private static final Path BASELINES_DIR = Path.of(System.getProperty("baselines.dir", "baselines"));
+    private static final String PACKAGE = BenchmarkRunner.class.getPackageName() + ".";
+    private static final double THRESHOLD_PERCENT = Double.parseDouble(System.getProperty("baseline.threshold", "10"));
+
+    public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException {
+        String command = args.length > 1 && (args[0].equals("save") || args[0].equals("compare")) ? args[0] : null;
+        String baseline = command != null ? args[1] : null;
+        String[] jmhArgs = command != null ? Arrays.copyOfRange(args, 2, args.length) : args;
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(new CommandLineOptions(jmhArgs));
+        options.addProfiler(GCProfiler.class);
+        Collection<RunResult> results = new Runner(options.build()).run();
+        Map<String, Measurement> current = collect(results);
+
+        if ("save".equals(command)) {
+            Path file = save(baseline, current);
+            System.out.println("Базовые результаты сохранены: " + file.toAbsolutePath());
+        } else if ("compare".equals(command)) {
+            boolean regression = compare(load(baseline), current);
+            if (regression) System.exit(1);
+        }
+    }
+
+    /** Результат одного бенчмарка с одним набором параметров. */
+    private record Measurement(String mode, double score, double error, String unit, double allocPerOp) {
+        boolean higherIsBetter() {
+            return mode.equals(Mode.Throughput.shortLabel());
+        }
+    }
+
+    private static Map<String, Measurement> collect(Collection<RunResult> results) {
+        Map<String, Measurement> measurements = new TreeMap<>();
+        for (RunResult run : results) {
+            StringBuilder key = new StringBuilder(run.getParams().getBenchmark());
+            Collection<String> params = run.getParams().getParamsKeys();
+            if (!params.isEmpty()) {
+                key.append('[');
+                for (String param : params) {
+                    if (key.charAt(key.length() - 1) != '[') key.append(',');
+                    key.append(param).append('=').append(run.getParams().getParam(param));
+                }
+                key.append(']');
+            }
+
+            Result<?> primary = run.getPrimaryResult();
+            double alloc = Double.NaN;
+            for (Map.Entry<String, Result> secondary : run.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")) alloc = secondary.getValue().getScore();
+            }
+            measurements.put(key.toString(), new Measurement(run.getParams().getMode().shortLabel(),
+                    primary.getScore(), primary.getScoreError(), primary.getScoreUnit(), alloc));
+        }
+        return measurements;
+    }
+
+    private static Path save(String name, Map<String, Measurement> measurements) throws IOException {
+        Properties properties = new Properties();
+        measurements.forEach((key, m) -> {
+            properties.setProperty(key + ".mode", m.mode());
+            properties.setProperty(key + ".score", String.valueOf(m.score()));
+            properties.setProperty(key + ".error", String.valueOf(m.error()));
+            properties.setProperty(key + ".unit", m.unit());
+            if (!Double.isNaN(m.allocPerOp())) properties.setProperty(key + ".alloc", String.valueOf(m.allocPerOp()));
+        });
+        Files.createDirectories(BASELINES_DIR);
+        Path file = BASELINES_DIR.resolve(name + ".properties");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, "JMH baseline " + name + ", " + System.getProperty("java.vm.name")
+                    + " " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors()
+                    + " CPU");
+        }
+        return file;
+    }
+
+    private static Map<String, Measurement> load(String name) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(BASELINES_DIR.resolve(name + ".properties"), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Map<String, Measurement> measurements = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.endsWith(".score")) continue;
+            String id = key.substring(0, key.length() - ".score".length());
+            measurements.put(id, new Measurement(properties.getProperty(id + ".mode"),
+                    Double.parseDouble(properties.getProperty(id + ".score")),
+                    Double.parseDouble(properties.getProperty(id + ".error", "0")),
+                    properties.getProperty(id + ".unit"),
+                    Double.parseDouble(properties.getProperty(id + ".alloc", "NaN"))));
+        }
+        return measurements;
+    }
+
+    /**
+     * Печатает изменения относительно базовых результатов.
+     * @return true, если есть регрессия больше порога
+     */
+    private static boolean compare(Map<String, Measurement> baseline, Map<String, Measurement> current) {
+        boolean regression = false;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-70s %14s %14s %9s %12s%n", "Бенчмарк", "База", "Сейчас", "Δ, %", "Δ B/op");
+        for (Map.Entry<String, Measurement> entry : current.entrySet()) {
+            Measurement now = entry.getValue();
+            Measurement base = baseline.get(entry.getKey());
+            if (base == null || !base.unit().equals(now.unit())) {
+                System.out.printf(Locale.ROOT, "%-70s %14s %14.3f%n", shortName(entry.getKey()), "-", now.score());
+                continue;
+            }
+
+            double change = (now.score() - base.score()) / base.score() * 100;
+            // Положительное значение - стало хуже, независимо от режима
+            double worse = now.higherIsBetter() ? -change : change;
+            // При одной итерации JMH не считает погрешность
+            double noise = (finite(base.error()) + finite(now.error())) / base.score() * 100;
+            boolean regressed = worse > THRESHOLD_PERCENT && worse > noise;
+            regression |= regressed;
+
+            String allocChange = Double.isNaN(base.allocPerOp()) || Double.isNaN(now.allocPerOp())
+                    ? "-" : String.format(Locale.ROOT, "%+.1f", now.allocPerOp() - base.allocPerOp());
+            System.out.printf(Locale.ROOT, "%-70s %14.3f %14.3f %+9.1f %12s%s%n", shortName(entry.getKey()), base.score(),
+                    now.score(), change, allocChange, regressed ? "  РЕГРЕССИЯ" : "");
+        }
+        return regression;
+    }
+
+    private static String shortName(String key) {
+        return key.startsWith(PACKAGE) ? key.substring(PACKAGE.length()) : key;
+    }
+
+    private static double finite(double value) {
+        return Double.isFinite(value) ? value : 0;
+    }
+}
@@ -0,0 +1,114 @@
+package org.ejectfb.serverhandler.benchmarks;
+
+import org.ejectfb.serverhandler.controllers.ConsoleListModel;
+import org.ejectfb.serverhandler.services.ConsolePipeline;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+import org.ejectfb.serverhandler.utils.ConsoleLineReader;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Путь строки от вывода процесса до модели ListView.
+ * ingestToModel - как в приложении: поток чтения кладёт строки в {@link ConsolePipeline},
+ * отдельный поток (вместо потока FX) не чаще раза за кадр добавляет пачку в {@link ConsoleListModel}.
+ * Счётчики delivered и dropped показывают, сколько строк в секунду дошло до модели и сколько отброшено.
+ * appendBatch - стоимость добавления пачки одного кадра в заполненную модель с вытеснением старых строк.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsoleModelBenchmark {
+    static final int LINES = 10_000;
+    static final int FRAME_LINES = 1_000;
+
+    /** Строки, дошедшие до модели и отброшенные очередью, в пересчёте на секунду. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Delivery {
+        public long delivered;
+        public long dropped;
+    }
+
+    @Param({"10000", "100000"})
+    private int capacity;
+
+    private byte[] output;
+    private ConsoleLine[] frame;
+    private ConsoleListModel model;
+    private ConsoleListModel fxModel;
+    private ExecutorService fxThread;
+    private ScheduledExecutorService scheduler;
+    private ConsolePipeline<ConsoleLine> pipeline;
+    private long deliveredBefore;
+    private long droppedBefore;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LogGenerator generator = new LogGenerator(LogGenerator.Flavor.SPIGOT, 11);
+        output = generator.output(LINES);
+        frame = LogGenerator.toConsoleLines(generator.lines(FRAME_LINES));
+        model = new ConsoleListModel(capacity);
+        // Заполняем, чтобы измерять установившийся режим с вытеснением
+        while (model.size() < capacity) model.appendAll(List.of(frame));
+
+        fxModel = new ConsoleListModel(capacity);
+        fxThread = Executors.newSingleThreadExecutor();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        pipeline = new ConsolePipeline<>(capacity, fxModel::appendAll, fxThread, scheduler);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        deliveredBefore = pipeline.getDeliveredLines();
+        droppedBefore = pipeline.getDroppedLines();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdownNow();
+        fxThread.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void ingestToModel(Delivery delivery) throws IOException {
+        ConsoleLineReader reader = new ConsoleLineReader(new ByteArrayInputStream(output));
+        ConsoleLine line;
+        while ((line = reader.readLine()) != null) {
+            pipeline.offer(line);
+        }
+        delivery.delivered = pipeline.getDeliveredLines() - deliveredBefore;
+        delivery.dropped = pipeline.getDroppedLines() - droppedBefore;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_LINES)
+    public int appendBatch() {
+        model.appendAll(List.of(frame));
+        return model.size();
+    }
+}
@@ -0,0 +1,37 @@
+package org.ejectfb.serverhandler.benchmarks;
+
+import org.ejectfb.serverhandler.services.HandlerCore;
+import org.ejectfb.serverhandler.services.ServerInstance;
+import org.ejectfb.serverhandler.services.SettingsStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Ядро обработчика с одним незапущенным сервером во временном каталоге - для бенчмарков,
+ * которым нужен настоящий {@link ServerInstance}.
+ */
+class HandlerFixture implements AutoCloseable {
+    final Path dir;
+    final HandlerCore core;
+    final ServerInstance instance;
+
+    HandlerFixture() throws IOException {
+        dir = Files.createTempDirectory("handler-bench");
+        core = new HandlerCore(dir.resolve("archive"), dir, new SettingsStore(dir, null));
+        instance = core.createInstance("bench");
+    }
+
+    @Override
+    public void close() throws IOException {
+        core.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
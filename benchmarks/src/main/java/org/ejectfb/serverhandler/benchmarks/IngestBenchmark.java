@@ -0,0 +1,122 @@
+package org.ejectfb.serverhandler.benchmarks;
+
+import org.ejectfb.serverhandler.services.AlertEngine;
+import org.ejectfb.serverhandler.services.AlertRule;
+import org.ejectfb.serverhandler.services.MetricsStore;
+import org.ejectfb.serverhandler.services.ServerDataService;
+import org.ejectfb.serverhandler.services.ServerInstance;
+import org.ejectfb.serverhandler.services.ServerSupervisor;
+import org.ejectfb.serverhandler.services.NotificationDigest;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+import org.ejectfb.serverhandler.utils.ConsoleLineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка одной строки вывода в потоке чтения процесса: чтение из потока, разбор статистики
+ * и проверка правил оповещений. Операция - одна строка; запускать с профилировщиком GC
+ * (BenchmarkRunner добавляет его сам), чтобы видеть gc.alloc.rate.norm - байты на строку.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+    static final int LINES = 10_000;
+
+    private byte[] output;
+    private ServerDataService stats;
+    private AlertEngine alerts;
+    private HandlerFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        output = new LogGenerator(LogGenerator.Flavor.PAPER, 7).output(LINES);
+        stats = new ServerDataService(new MetricsStore());
+        fixture = new HandlerFixture();
+        // Оповещения не отправляются: получатель пустой
+        alerts = new AlertEngine(AlertRule.defaults(), new ServerInstance.Listener() {
+            @Override
+            public void onLine(ServerInstance instance, ConsoleLine line) {
+            }
+
+            @Override
+            public void onStateChanged(ServerInstance instance, ServerSupervisor.State state) {
+            }
+
+            @Override
+            public void onNotification(ServerInstance instance, String key, String text,
+                                       NotificationDigest.Priority priority) {
+            }
+        }, Runnable::run);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    /**
+     * Текущий путь: строки в байтах, декодирование только при совпадении.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void readParseAlert(Blackhole blackhole) throws IOException {
+        ConsoleLineReader reader = new ConsoleLineReader(new ByteArrayInputStream(output));
+        ConsoleLine line;
+        while ((line = reader.readLine()) != null) {
+            stats.acceptLine(line);
+            alerts.onLine(fixture.instance, line);
+            blackhole.consume(line);
+        }
+    }
+
+    /**
+     * Для сравнения: чтение через BufferedReader с созданием String на каждую строку.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void readLinesAsStrings(Blackhole blackhole) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(output), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            stats.acceptLine(line);
+            blackhole.consume(line);
+        }
+    }
+
+    /**
+     * Только чтение строк, без обработки.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void readOnly(Blackhole blackhole) throws IOException {
+        ConsoleLineReader reader = new ConsoleLineReader(new ByteArrayInputStream(output));
+        ConsoleLine line;
+        while ((line = reader.readLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+}
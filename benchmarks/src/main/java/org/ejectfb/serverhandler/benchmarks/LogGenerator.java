@@ -0,0 +1,142 @@
+package org.ejectfb.serverhandler.benchmarks;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Синтетический вывод сервера Spigot или Paper с соотношением строк, как на загруженном сервере:
+ * чат (в том числе на русском), команды игроков, входы и выходы, сообщения плагинов,
+ * предупреждения об отставании и пачки строк стектрейсов. Последовательность детерминирована seed.
+ */
+public class LogGenerator {
+    public enum Flavor {
+        SPIGOT, PAPER
+    }
+
+    private static final String[] PLAYERS = {
+            "Steve", "Alex", "Notch_fan", "EjectFB", "xX_Miner_Xx", "Kirill2009", "Builder42", "Zombie_Slayer"
+    };
+    private static final String[] CHAT = {
+            "привет всем", "кто-нибудь видел алмазы?", "го на спавн", "lag again...", "how do I claim land",
+            "спасибо за помощь!", "продам незеритовую кирку", "/tpa не работает", "gg", "где купить элитры"
+    };
+    private static final String[] COMMANDS = {
+            "/home", "/spawn", "/tpa Steve", "/sethome base", "/warp shop", "/msg Alex привет", "/claim", "/back"
+    };
+    private static final String[] PLUGINS = {
+            "[Essentials] Payment of $250.00 sent", "[WorldGuard] Region saved", "[LuckPerms] Applying permissions",
+            "[CoreProtect] Data saved", "[Vault] Economy hooked"
+    };
+    private static final String[] STACK = {
+            "java.lang.NullPointerException: Cannot invoke \"org.bukkit.entity.Player.getLocation()\"",
+            "\tat com.example.plugin.Listener.onMove(Listener.java:88)",
+            "\tat org.bukkit.plugin.java.JavaPluginLoader$1.execute(JavaPluginLoader.java:306)",
+            "\tat org.bukkit.plugin.SimplePluginManager.fireEvent(SimplePluginManager.java:589)",
+            "\tat net.minecraft.server.network.PlayerConnection.a(PlayerConnection.java:1234)",
+            "\tat net.minecraft.server.MinecraftServer.runServer(MinecraftServer.java:1100)",
+            "\tat java.base/java.lang.Thread.run(Thread.java:833)"
+    };
+
+    private final Flavor flavor;
+    private final Random random;
+    private final List<String> pending = new ArrayList<>();
+    private int secondOfDay = 12 * 3600;
+
+    public LogGenerator(Flavor flavor, long seed) {
+        this.flavor = flavor;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Следующая строка вывода без перевода строки.
+     */
+    public String nextLine() {
+        if (!pending.isEmpty()) return pending.remove(0);
+        if (random.nextInt(4) == 0) secondOfDay = (secondOfDay + 1) % 86400;
+
+        String player = PLAYERS[random.nextInt(PLAYERS.length)];
+        int kind = random.nextInt(100);
+        if (kind < 35) return info("<" + player + "> " + CHAT[random.nextInt(CHAT.length)]);
+        if (kind < 50) return info(player + " issued server command: " + COMMANDS[random.nextInt(COMMANDS.length)]);
+        if (kind < 55) return info(player + " joined the game");
+        if (kind < 60) return info(player + " left the game");
+        if (kind < 65) return info(player + "[/10.0.0." + random.nextInt(255) + ":" + (40000 + random.nextInt(20000))
+                + "] logged in with entity id " + random.nextInt(100000) + " at ([world]12.5, 64.0, -3.5)");
+        if (kind < 80) return info(PLUGINS[random.nextInt(PLUGINS.length)]);
+        if (kind < 85) return warn("Can't keep up! Is the server overloaded? Running " + (2000 + random.nextInt(3000))
+                + "ms or " + (40 + random.nextInt(60)) + " ticks behind");
+        if (kind < 88) {
+            // Стектрейс приходит пачкой строк подряд
+            String first = error("Could not pass event PlayerMoveEvent to ExamplePlugin v1.0");
+            int depth = 3 + random.nextInt(STACK.length - 2);
+            for (int i = 0; i < depth; i++) pending.add(STACK[i]);
+            return first;
+        }
+        return info("UUID of player " + player + " is 069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    }
+
+    /**
+     * Ответы сервера на команды статистики (list, tps, mem).
+     */
+    public List<String> statsResponse() {
+        int online = random.nextInt(50);
+        return List.of(
+                info("There are " + online + " of a max of 100 players online: Steve, Alex"),
+                info("TPS from last 1m, 5m, 15m: 19.98, 19.95, 19.9"),
+                info("Current Memory Usage: " + (2000 + random.nextInt(4000)) + "/8192 mb (Max: 8192 mb)"));
+    }
+
+    public List<String> lines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) lines.add(nextLine());
+        return lines;
+    }
+
+    /**
+     * Строки в виде, в котором их отдаёт {@link org.ejectfb.serverhandler.utils.ConsoleLineReader}.
+     */
+    public static ConsoleLine[] toConsoleLines(List<String> lines) {
+        ConsoleLine[] result = new ConsoleLine[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            byte[] bytes = lines.get(i).getBytes(StandardCharsets.UTF_8);
+            result[i] = ConsoleLine.copyOf(bytes, 0, bytes.length);
+        }
+        return result;
+    }
+
+    /**
+     * Поток вывода процесса: строки в UTF-8, каждая с переводом строки.
+     */
+    public byte[] output(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 80);
+        for (int i = 0; i < count; i++) {
+            out.writeBytes(nextLine().getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private String info(String message) {
+        return prefix("INFO") + message;
+    }
+
+    private String warn(String message) {
+        return prefix("WARN") + message;
+    }
+
+    private String error(String message) {
+        return prefix("ERROR") + message;
+    }
+
+    private String prefix(String level) {
+        String time = String.format("%02d:%02d:%02d", secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60);
+        return flavor == Flavor.PAPER
+                ? "[" + time + " " + level + "]: "
+                : "[" + time + "] [Server thread/" + level + "]: ";
+    }
+}
@@ -0,0 +1,85 @@
+package org.ejectfb.serverhandler.benchmarks;
+
+import org.ejectfb.serverhandler.services.MetricsStore;
+import org.ejectfb.serverhandler.services.ServerDataService;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+import org.ejectfb.serverhandler.utils.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость одного запроса статистики в зависимости от объёма вывода между запросами:
+ * все строки консоли проходят через разбор статистики, в конце приходят ответы list/tps/mem.
+ * Строки без маркеров должны отсекаться по байтам, поэтому стоимость растёт линейно с малым коэффициентом.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsParsingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int consoleLines;
+
+    @Param({"PAPER", "SPIGOT"})
+    private LogGenerator.Flavor flavor;
+
+    private ConsoleLine[] bytesConsole;
+    private String[] stringConsole;
+    private ServerDataService stats;
+
+    @Setup
+    public void setup() {
+        LogGenerator generator = new LogGenerator(flavor, 42);
+        List<String> lines = new ArrayList<>(generator.lines(consoleLines));
+        lines.addAll(generator.statsResponse());
+        bytesConsole = LogGenerator.toConsoleLines(lines);
+        stringConsole = lines.toArray(String[]::new);
+        stats = new ServerDataService(new MetricsStore());
+        stats.setServerStartTime(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(30));
+    }
+
+    /**
+     * Текущий путь: строки в байтах с отсевом по маркерам.
+     */
+    @Benchmark
+    public ServerDataService.Players statsRequest() {
+        for (ConsoleLine line : bytesConsole) {
+            stats.acceptLine(line);
+        }
+        stats.collectStatsData();
+        return stats.getPlayers();
+    }
+
+    /**
+     * Для сравнения: каждая строка уже декодирована и проверяется регулярным выражением.
+     */
+    @Benchmark
+    public ServerDataService.Players statsRequestFromStrings() {
+        for (String line : stringConsole) {
+            stats.acceptLine(line);
+        }
+        stats.collectStatsData();
+        return stats.getPlayers();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String formatDuration() {
+        return StringUtils.formatDuration(TimeUnit.HOURS.toMillis(30) + consoleLines);
+    }
+}
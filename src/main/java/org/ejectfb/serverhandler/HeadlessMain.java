@@ -0,0 +1,170 @@
+package org.ejectfb.serverhandler;
+
+import org.ejectfb.serverhandler.services.HandlerCore;
+import org.ejectfb.serverhandler.services.NotificationDigest;
+import org.ejectfb.serverhandler.services.ServerInstance;
+import org.ejectfb.serverhandler.services.ServerSupervisor;
+import org.ejectfb.serverhandler.services.Settings;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Запуск без UI (демон, сервис systemd, хост без дисплея). JavaFX не загружается.
+ * Настройки берутся из активного профиля {@link org.ejectfb.serverhandler.services.SettingsStore}
+ * (-Dsettings.dir, -Dsettings.profile), заданные системные свойства имеют приоритет над ними:
+ * <pre>
+ *   -Dservers=proxy,lobby                 имена серверов (если не заданы и в профиле - один сервер "main")
+ *   -Dserver.&lt;имя&gt;.command=...         команда запуска, для единственного сервера можно -Dserver.command
+ *   -Dserver.&lt;имя&gt;.nice=10             приоритет процесса
+ *   -Dserver.&lt;имя&gt;.cpus=0-3            привязка к ядрам
+ *   -Dtelegram.token=... -Dtelegram.chatId=...
+ *   -Dstats.pollHours=3
+ *   -Dapi.port=8765 -Dapi.bind=127.0.0.1 -Dapi.token=...   HTTP API управления ({@link org.ejectfb.serverhandler.services.ControlApi}),
+ *                                         без токена он создаётся при запуске и печатается в stdout
+ * </pre>
+ * Изменения файлов настроек применяются без перезапуска, свойства при этом по-прежнему имеют приоритет.
+ * Вывод всех серверов печатается в stdout с префиксом имени, строки stdin отправляются
+ * серверу как команды ("имя: команда" или просто "команда" для первого сервера).
+ */
+public class HeadlessMain {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(120);
+
+    public static void main(String[] args) {
+        System.setOut(new PrintStream(System.out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(System.err, true, StandardCharsets.UTF_8));
+
+        HandlerCore core = new HandlerCore();
+        core.addListener(new ServerInstance.Listener() {
+            @Override
+            public void onLine(ServerInstance instance, ConsoleLine line) {
+                // Байты строки выводятся как есть, без декодирования
+                synchronized (System.out) {
+                    System.out.print("[" + instance.getName() + "] ");
+                    System.out.write(line.bytes(), 0, line.bytes().length);
+                    System.out.println();
+                }
+            }
+
+            @Override
+            public void onStateChanged(ServerInstance instance, ServerSupervisor.State state) {
+            }
+
+            @Override
+            public void onNotification(ServerInstance instance, String key, String text,
+                                       NotificationDigest.Priority priority) {
+            }
+        });
+
+        Settings settings = new Settings();
+        try {
+            settings = core.getSettingsStore().load();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка загрузки настроек: " + e.getMessage());
+        }
+        applyOverrides(settings);
+        core.applySettings(settings);
+        if (!settings.hasTelegram()) {
+            System.out.println("Предупреждение: токен бота или chat ID не заданы. Уведомления в Telegram отправляться не будут.");
+        }
+        try {
+            core.watchSettings(changed -> {
+                applyOverrides(changed);
+                core.applySettings(changed);
+                System.out.println("Настройки перечитаны из файла");
+            });
+        } catch (IOException e) {
+            System.err.println("Не удалось включить отслеживание файла настроек: " + e.getMessage());
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            core.shutdown(SHUTDOWN_TIMEOUT);
+            stopped.countDown();
+        }, "shutdown"));
+
+        try {
+            InetSocketAddress api = core.startControlApi();
+            if (api != null) System.out.println("API управления: http://" + api.getHostString() + ":" + api.getPort() + "/api/servers");
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить API управления: " + e.getMessage());
+        }
+
+        for (ServerInstance instance : core.getRegistry().list()) {
+            instance.start();
+        }
+
+        readCommands(core);
+        // stdin закрыт (например, под systemd) - работаем до сигнала остановки
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Переносит в настройки заданные системные свойства и переменные окружения.
+     */
+    private static void applyOverrides(Settings settings) {
+        String token = System.getProperty("telegram.token", System.getenv("TELEGRAM_BOT_TOKEN"));
+        String chatId = System.getProperty("telegram.chatId", System.getenv("TELEGRAM_CHAT_ID"));
+        if (token != null && !token.isEmpty()) settings.setTelegramToken(token);
+        if (chatId != null && !chatId.isEmpty()) settings.setTelegramChatId(chatId);
+        Integer pollHours = Integer.getInteger("stats.pollHours");
+        if (pollHours != null) settings.setPollIntervalHours(pollHours);
+
+        String servers = System.getProperty("servers");
+        if (servers != null) {
+            List<Settings.Server> selected = new ArrayList<>();
+            for (String name : servers.split(",")) {
+                selected.add(settings.server(name.trim()));
+            }
+            settings.getServers().retainAll(selected);
+        } else if (settings.getServers().isEmpty()) {
+            settings.server("main");
+        }
+
+        for (Settings.Server server : settings.getServers()) {
+            String name = server.getName();
+            String command = System.getProperty("server." + name + ".command");
+            if (command == null && settings.getServers().size() == 1) command = System.getProperty("server.command");
+            if (command != null) server.setCommand(command);
+            Integer nice = Integer.getInteger("server." + name + ".nice");
+            if (nice != null) server.setNiceLevel(nice);
+            String cpus = System.getProperty("server." + name + ".cpus");
+            if (cpus != null) server.setCpuAffinity(cpus);
+        }
+    }
+
+    private static void readCommands(HandlerCore core) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+
+                ServerInstance target = core.getRegistry().list().get(0);
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    ServerInstance named = core.getRegistry().get(line.substring(0, colon).trim());
+                    if (named != null) {
+                        target = named;
+                        line = line.substring(colon + 1).trim();
+                    }
+                }
+                target.sendCommand(line);
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения stdin: " + e.getMessage());
+        }
+    }
+}
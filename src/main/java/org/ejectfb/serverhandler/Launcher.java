@@ -0,0 +1,26 @@
+package org.ejectfb.serverhandler;
+
+/**
+ * Точка входа jar-файла. Выбирает интерфейс до загрузки каких-либо классов JavaFX:
+ * с ключом --headless, свойством -Dheadless=true или без дисплея в Linux запускается
+ * {@link HeadlessMain}, иначе окно {@link MainApp}.
+ */
+public class Launcher {
+    public static void main(String[] args) throws Exception {
+        if (isHeadless(args)) {
+            HeadlessMain.main(args);
+        } else {
+            MainApp.main(args);
+        }
+    }
+
+    private static boolean isHeadless(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--headless")) return true;
+        }
+        if (Boolean.getBoolean("headless")) return true;
+
+        boolean linux = System.getProperty("os.name").toLowerCase().contains("linux");
+        return linux && System.getenv("DISPLAY") == null && System.getenv("WAYLAND_DISPLAY") == null;
+    }
+}
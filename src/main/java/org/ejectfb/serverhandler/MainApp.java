@@ -5,20 +5,45 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import org.ejectfb.serverhandler.controllers.ServerController;
+import org.ejectfb.serverhandler.services.HandlerCore;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 
 public class MainApp extends Application {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(120);
+    private HandlerCore core;
+    private ServerController controller;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
-        Parent root = FXMLLoader.load(getClass().getResource("MainApp.fxml"));
+        // Окно - один из интерфейсов ядра, серверы и уведомления живут в HandlerCore
+        core = new HandlerCore();
+        try {
+            core.startControlApi();
+        } catch (IOException e) {
+            System.err.println("Не удалось запустить API управления: " + e.getMessage());
+        }
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("MainApp.fxml"));
+        loader.setControllerFactory(type -> new ServerController(core));
+        Parent root = loader.load();
+        controller = loader.getController();
         primaryStage.setTitle("Minecraft Server Manager");
         primaryStage.setScene(new Scene(root, 900, 600));
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) controller.detach();
+        // Закрытие окна останавливает серверы корректно: save-all и stop
+        if (core != null) core.shutdown(SHUTDOWN_TIMEOUT);
+    }
+
     public static void main(String[] args) throws UnsupportedEncodingException {
         System.setOut(new PrintStream(System.out, true, StandardCharsets.UTF_8));
         System.setErr(new PrintStream(System.err, true, StandardCharsets.UTF_8));
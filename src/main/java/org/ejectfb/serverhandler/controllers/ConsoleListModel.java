@@ -0,0 +1,72 @@
+package org.ejectfb.serverhandler.controllers;
+
+import javafx.collections.ObservableListBase;
+import org.ejectfb.serverhandler.utils.ConsoleBuffer;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.util.List;
+
+/**
+ * ObservableList поверх {@link ConsoleBuffer} для ListView консоли.
+ * ListView виртуализирован и рисует только видимые строки, а модель сообщает
+ * об изменениях одним событием на пачку строк без копирования всего текста.
+ * Строки хранятся как {@link ConsoleLine}: ячейка ListView вызывает toString(),
+ * поэтому декодируются только строки, которые хоть раз попали на экран.
+ */
+public class ConsoleListModel extends ObservableListBase<ConsoleLine> {
+    private final ConsoleBuffer<ConsoleLine> buffer;
+
+    public ConsoleListModel(int capacity) {
+        this.buffer = new ConsoleBuffer<>(capacity);
+    }
+
+    public void appendAll(List<ConsoleLine> batch) {
+        if (batch.isEmpty()) return;
+
+        // Если пачка больше ёмкости, в буфер попадут только последние строки
+        List<ConsoleLine> toAdd = batch.size() > buffer.capacity()
+                ? batch.subList(batch.size() - buffer.capacity(), batch.size())
+                : batch;
+        int evictCount = Math.max(0, buffer.size() + toAdd.size() - buffer.capacity());
+
+        beginChange();
+        try {
+            if (evictCount > 0) {
+                nextRemove(0, buffer.oldest(evictCount));
+            }
+            for (ConsoleLine line : toAdd) {
+                buffer.add(line);
+            }
+            nextAdd(buffer.size() - toAdd.size(), buffer.size());
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (buffer.size() == 0) return;
+
+        beginChange();
+        try {
+            nextRemove(0, buffer.oldest(buffer.size()));
+            buffer.clear();
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public ConsoleLine get(int index) {
+        return buffer.get(index);
+    }
+
+    @Override
+    public int size() {
+        return buffer.size();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+}
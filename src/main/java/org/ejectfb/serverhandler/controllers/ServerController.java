@@ -7,44 +7,53 @@ import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.PasswordField;
-import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import org.ejectfb.serverhandler.services.ServerDataService;
-import org.ejectfb.serverhandler.services.TelegramBotService;
+import org.ejectfb.serverhandler.services.ConsolePipeline;
+import org.ejectfb.serverhandler.services.ConsoleSearch;
+import org.ejectfb.serverhandler.services.HandlerCore;
+import org.ejectfb.serverhandler.services.NotificationDigest;
+import org.ejectfb.serverhandler.services.ServerInstance;
+import org.ejectfb.serverhandler.services.ServerRegistry;
+import org.ejectfb.serverhandler.services.ServerSupervisor;
+import org.ejectfb.serverhandler.services.Settings;
+import org.ejectfb.serverhandler.services.SettingsStore;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
 
-public class ServerController {
-    private int lineCounter = 0;
-    private long serverStartTime = 0;
-    private static final int MAX_LINES = 200; // Максимальное количество строк перед очисткой
-    private final StringBuilder consoleBuffer = new StringBuilder();
-    private volatile boolean consoleUpdateScheduled = false;
+public class ServerController implements ServerInstance.Listener {
+    // Количество хранимых строк консоли, можно переопределить через -Dconsole.maxLines
+    private static final int MAX_LINES = Integer.getInteger("console.maxLines", 10_000);
+    private static final int HISTORY_SEARCH_LIMIT = 500;
+    private static final String DEFAULT_INSTANCE = "main";
+    private static final String DEFAULT_COMMAND =
+            "java -Xmx8G -Xms1G -Dfile.encoding=UTF-8 -jar spigot-1.20.1.jar nogui --world-dir=./worlds";
 
     // FXML элементы
-    @FXML private TextArea consoleOutput;
+    @FXML private ListView<ConsoleLine> consoleOutput;
+    @FXML private ComboBox<String> instanceSelector;
+    @FXML private TextField newInstanceField;
     @FXML private TextField serverCommandField;
+    @FXML private TextField niceLevelField;
+    @FXML private TextField cpuAffinityField;
     @FXML private TextField pollIntervalField;
     @FXML private TextField serverCommandInput;
+    @FXML private TextField historySearchField;
     @FXML private PasswordField botTokenField;
     @FXML private TextField chatIdField;
     @FXML private Button startStopButton;
@@ -52,20 +61,27 @@ public class ServerController {
     @FXML private Button statsButton;
     @FXML private Label lineCounterLabel;
 
-    // Серверные переменные
-    private Process serverProcess;
-    private BufferedReader processReader;
-    private BufferedWriter processWriter;
-    private ExecutorService executorService;
-    private Timer statsTimer;
-    private int pollIntervalHours = 3;
-    private TelegramBotService telegramBot;
+    /** Консоль одного сервера в UI: своя модель и своя очередь доставки строк. */
+    private static final class ConsoleView {
+        final ConsoleListModel lines = new ConsoleListModel(MAX_LINES);
+        ConsolePipeline<ConsoleLine> pipeline;
+    }
+
+    private final HandlerCore core;
+    private final ServerRegistry registry;
+    private final Map<ServerInstance, ConsoleView> views = new ConcurrentHashMap<>();
+    private volatile ServerInstance selected;
 
     // Свойства для биндинга
     private final BooleanProperty isServerRunning = new SimpleBooleanProperty(false);
-    private final BooleanProperty isManualStop = new SimpleBooleanProperty(false);
-    private volatile ServerDataService currentStatsData;
-    private final ScheduledExecutorService statsScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * @param core ядро обработчика, к которому подключается окно
+     */
+    public ServerController(HandlerCore core) {
+        this.core = core;
+        this.registry = core.getRegistry();
+    }
 
     @FXML
     private void testTelegramConnection() {
@@ -74,24 +90,23 @@ public class ServerController {
 
         if (token.isEmpty() || chatId.isEmpty()) {
             appendToConsole("Ошибка: токен бота и chat ID должны быть заполнены");
-            telegramBot = null;
+            core.disableTelegram();
             return;
         }
 
         try {
-            telegramBot = new TelegramBotService(token, chatId);
-            if (telegramBot.isBotConnected()) appendToConsole("Телеграм бот успешно подключен");
+            if (core.configureTelegram(token, chatId).isBotConnected()) {
+                appendToConsole("Телеграм бот успешно подключен");
+                saveSettings();
+            }
         } catch (Exception e) {
             appendToConsole("Ошибка подключения Telegram бота: " + e.getMessage());
-            telegramBot = null;
+            core.disableTelegram();
         }
     }
 
     @FXML
     public void initialize() {
-        // Инициализация счетчика строк
-        lineCounterLabel.setText("Строк: 0/" + MAX_LINES);
-
         // Настройка биндингов
         BooleanBinding serverNotRunning = isServerRunning.not();
 
@@ -106,7 +121,20 @@ public class ServerController {
                         .otherwise("Запустить")
         );
 
+        core.addListener(this);
         loadSettings();
+        for (ServerInstance instance : registry.list()) {
+            instanceSelector.getItems().add(instance.getName());
+        }
+        pollIntervalField.setText(String.valueOf(core.getPollIntervalHours()));
+        select(registry.list().get(0));
+    }
+
+    /**
+     * Отключает окно от ядра. Серверы продолжают работать без него.
+     */
+    public void detach() {
+        core.removeListener(this);
     }
 
     private void initTelegramBot() {
@@ -119,27 +147,83 @@ public class ServerController {
         }
 
         try {
-            telegramBot = new TelegramBotService(token, chatId);
+            core.configureTelegram(token, chatId);
         } catch (Exception e) {
             appendToConsole("Ошибка инициализации Telegram бота: " + e.getMessage());
         }
     }
 
+    // События серверов, вызываются из фоновых потоков
+
+    @Override
+    public void onLine(ServerInstance instance, ConsoleLine line) {
+        viewFor(instance).pipeline.offer(line);
+    }
+
+    @Override
+    public void onStateChanged(ServerInstance instance, ServerSupervisor.State state) {
+        Platform.runLater(() -> {
+            if (instance != selected) return;
+            isServerRunning.set(instance.isRunning());
+            // Команда могла быть изменена подбором параметров JVM
+            if (state == ServerSupervisor.State.RUNNING) serverCommandField.setText(instance.getCommand());
+        });
+    }
+
+    @Override
+    public void onNotification(ServerInstance instance, String key, String text, NotificationDigest.Priority priority) {
+        // Уведомления отправляет ядро
+    }
+
     // Обработчики событий
     @FXML
     private void handleStartStop() {
-        if (isServerRunning.get()) stopServer();
-        else startServer();
+        ServerInstance instance = selected;
+        if (instance.isRunning()) {
+            instance.stop();
+            return;
+        }
+        if (!applyInstanceSettings(instance)) return;
+        saveSettings();
+
+        // Бот только ставит сообщения в очередь, поэтому создаётся сразу, без отдельного потока
+        initTelegramBot();
+        instance.start();
+        isServerRunning.set(instance.isRunning());
     }
 
     @FXML
     private void handleRestart() {
-        if (isServerRunning.get()) sendCommandToServer("stop");
+        if (selected.isRunning()) selected.restart();
     }
 
     @FXML
     private void handleSendStats() {
-        requestStats();
+        ServerInstance instance = selected;
+        instance.requestStats().thenAccept(stats -> {
+            if (stats != null) Platform.runLater(() -> sendServerStats(instance, stats));
+        });
+    }
+
+    @FXML
+    private void handleSelectInstance() {
+        ServerInstance instance = registry.get(instanceSelector.getValue());
+        if (instance != null && instance != selected) select(instance);
+    }
+
+    @FXML
+    private void handleAddInstance() {
+        String name = newInstanceField.getText().trim();
+        try {
+            ServerInstance instance = core.createInstance(name);
+            instance.setCommand(serverCommandField.getText());
+            instanceSelector.getItems().add(name);
+            newInstanceField.clear();
+            select(instance);
+            saveSettings();
+        } catch (IllegalArgumentException e) {
+            appendToConsole("Ошибка: " + e.getMessage());
+        }
     }
 
     @FXML
@@ -147,10 +231,9 @@ public class ServerController {
         try {
             int newInterval = Integer.parseInt(pollIntervalField.getText());
             if (newInterval > 0) {
-                pollIntervalHours = newInterval;
-                startStatsTimer();
+                core.setPollIntervalHours(newInterval);
                 saveSettings();
-                appendToConsole("Интервал опроса изменен на " + pollIntervalHours + " часов");
+                appendToConsole("Интервал опроса изменен на " + newInterval + " часов");
             }
         } catch (NumberFormatException e) {
             appendToConsole("Ошибка: введите корректное число часов");
@@ -162,276 +245,199 @@ public class ServerController {
         if (event.getCode() == KeyCode.ENTER && isServerRunning.get()) {
             String command = serverCommandInput.getText();
             if (!command.isEmpty()) {
-                sendCommandToServer(command);
+                selected.sendCommand(command);
                 serverCommandInput.clear();
                 // Прокрутка вниз после ввода команды
-                Platform.runLater(() -> {
-                    consoleOutput.setScrollTop(Double.MAX_VALUE);
-                });
+                Platform.runLater(() -> consoleOutput.scrollTo(consoleOutput.getItems().size() - 1));
             }
         }
     }
 
     @FXML
-    private void handleClearConsole() {
-        consoleOutput.clear();
-        lineCounter = 0;
-        lineCounterLabel.setText("Строк: " + lineCounter + "/" + MAX_LINES);
-        appendToConsole("--- Консоль была очищена вручную ---");
-    }
-
-    private void startServer() {
-        currentStatsData = new ServerDataService();
-        currentStatsData.setServerStartTime(System.currentTimeMillis());
-        isManualStop.set(false);
-        // Инициализация Telegram бота в отдельном потоке
-        CompletableFuture.runAsync(() -> {
-            try {
-                initTelegramBot();
-            } catch (Exception e) {
-                appendToConsole("Ошибка инициализации Telegram бота: " + e.getMessage());
-            }
-        });
-
-        String command = serverCommandField.getText();
-        if (command.isEmpty()) {
-            appendToConsole("Ошибка: команда запуска сервера не указана");
+    private void handleHistorySearch() {
+        String text = historySearchField.getText();
+        if (text.isBlank()) return;
+        ServerInstance instance = selected;
+        ConsoleSearch consoleSearch = instance.getConsoleSearch();
+        if (consoleSearch == null) {
+            appendToConsole("Ошибка: архив консоли недоступен");
             return;
         }
 
+        ConsoleSearch.Query query;
         try {
-            appendToConsole("Запуск сервера: " + command);
-
-            // Настройка ProcessBuilder с буферизацией
-            ProcessBuilder pb;
-            if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                pb = new ProcessBuilder("cmd", "/c", command);
-            } else {
-                pb = new ProcessBuilder("/bin/sh", "-c", command);
-            }
+            query = ConsoleSearch.Query.parse(text, 0, Long.MAX_VALUE, HISTORY_SEARCH_LIMIT);
+        } catch (PatternSyntaxException e) {
+            appendToConsole("Ошибка в регулярном выражении: " + e.getDescription());
+            return;
+        } catch (IllegalArgumentException e) {
+            appendToConsole("Ошибка: " + e.getMessage());
+            return;
+        }
 
-            pb.redirectErrorStream(true);
-            pb.environment().put("JAVA_TOOL_OPTIONS", "-Dfile.encoding=UTF-8");
-
-            serverProcess = pb.start();
-
-            // Асинхронное чтение вывода сервера
-            executorService = Executors.newSingleThreadExecutor();
-            executorService.submit(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(serverProcess.getInputStream(), StandardCharsets.UTF_8))) {
-
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        final String consoleLine = line;
-                        Platform.runLater(() -> appendToConsole(consoleLine));
-                    }
-                } catch (IOException e) {
-                    if (!e.getMessage().contains("Stream closed")) {
-                        Platform.runLater(() ->
-                                appendToConsole("Ошибка чтения вывода: " + e.getMessage()));
-                    }
-                }
-            });
+        // Результаты показываются в консоли, но не попадают в архив
+        ConsolePipeline<ConsoleLine> pipeline = viewFor(instance).pipeline;
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("dd.MM HH:mm:ss");
+        pipeline.offer(ConsoleLine.of("--- Поиск по истории: " + text + " ---"));
+        long started = System.nanoTime();
+        consoleSearch.search(query, entry -> pipeline.offer(ConsoleLine.of("[" + dtf.format(
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timestamp), ZoneId.systemDefault()))
+                        + "] " + entry.line)))
+                .whenComplete((count, error) -> pipeline.offer(ConsoleLine.of(error != null
+                        ? "--- Ошибка поиска: " + error.getMessage() + " ---"
+                        : "--- Найдено строк: " + count + " за "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " мс ---")));
+    }
 
-            // Инициализация писателя для команд
-            processWriter = new BufferedWriter(
-                    new OutputStreamWriter(serverProcess.getOutputStream(), StandardCharsets.UTF_8));
-
-            isServerRunning.set(true);
-            startProcessMonitor();
-            startStatsTimer();
-
-            // Асинхронная отправка уведомления в Telegram
-            CompletableFuture.runAsync(() -> {
-                try {
-                    if (telegramBot != null) {
-                        telegramBot.sendMessage("✅ Сервер Minecraft запущен");
-                    }
-                } catch (Exception e) {
-                    appendToConsole("Ошибка отправки в Telegram: " + e.getMessage());
-                }
-            });
+    @FXML
+    private void handleClearConsole() {
+        viewFor(selected).lines.clear();
+        lineCounterLabel.setText("Строк: 0/" + MAX_LINES);
+        appendToConsole("--- Консоль была очищена вручную ---");
+    }
 
-        } catch (IOException e) {
-            appendToConsole("Ошибка при запуске сервера: " + e.getMessage());
-            cleanup();
-        }
+    /**
+     * Переключает UI на другой сервер. ListView получает модель этого сервера целиком,
+     * текст консоли не копируется.
+     */
+    private void select(ServerInstance instance) {
+        if (selected != null) applyInstanceSettings(selected);
+        show(instance);
     }
 
-    private void stopServer() {
-        if (!isServerRunning.get()) return;
+    private void show(ServerInstance instance) {
+        selected = instance;
+        instanceSelector.setValue(instance.getName());
 
-        isManualStop.set(true);
-        appendToConsole("Остановка сервера...");
-        sendCommandToServer("stop");
+        ConsoleView view = viewFor(instance);
+        consoleOutput.setItems(view.lines);
+        updateLineCounter(view);
+        consoleOutput.scrollTo(view.lines.size() - 1);
 
+        serverCommandField.setText(instance.getCommand());
+        niceLevelField.setText(instance.getNiceLevel() == null ? "" : String.valueOf(instance.getNiceLevel()));
+        cpuAffinityField.setText(instance.getCpuAffinity() == null ? "" : instance.getCpuAffinity());
+        isServerRunning.set(instance.isRunning());
+    }
+
+    private boolean applyInstanceSettings(ServerInstance instance) {
+        instance.setCommand(serverCommandField.getText());
+        instance.setCpuAffinity(cpuAffinityField.getText().isBlank() ? null : cpuAffinityField.getText().trim());
+        String nice = niceLevelField.getText().trim();
         try {
-            Thread.sleep(5000);
-            if (serverProcess.isAlive()) serverProcess.destroyForcibly();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            instance.setNiceLevel(nice.isEmpty() ? null : Integer.parseInt(nice));
+            return true;
+        } catch (NumberFormatException e) {
+            instance.log("Ошибка: приоритет (nice) должен быть целым числом от -20 до 19");
+            return false;
         }
+    }
 
-        cleanup();
+    private ConsoleView viewFor(ServerInstance instance) {
+        return views.computeIfAbsent(instance, i -> {
+            // Строки консоли доставляются в UI пачками не чаще раза за кадр
+            ConsoleView view = new ConsoleView();
+            view.pipeline = new ConsolePipeline<>(MAX_LINES, batch -> flushConsole(i, view, batch),
+                    Platform::runLater, registry.getScheduler());
+            return view;
+        });
+    }
 
-        if (telegramBot != null) {
-            telegramBot.sendMessage("⛔ Сервер Minecraft остановлен");
+    private void sendServerStats(ServerInstance instance, String stats) {
+        if (core.getTelegramBot() == null) {
+            appendToConsole("Ошибка: Telegram бот не настроен. Пожалуйста, укажите токен бота и chat ID во вкладке настроек.");
+            return;
         }
-    }
 
-    private void cleanup() {
         try {
-            if (processReader != null) processReader.close();
-            if (processWriter != null) processWriter.close();
-            if (executorService != null) executorService.shutdownNow();
-            if (statsTimer != null) statsTimer.cancel();
-        } catch (IOException e) {
-            appendToConsole("Ошибка при очистке ресурсов: " + e.getMessage());
-        } finally {
-            isServerRunning.set(false);
+            core.onNotification(instance, "stats", stats, NotificationDigest.Priority.IMMEDIATE);
+            instance.log("Статистика отправлена в Telegram:\n" + stats);
+        } catch (Exception e) {
+            instance.log("Ошибка отправки статистики в Telegram: " + e.getMessage());
         }
     }
 
-    private void sendCommandToServer(String command) {
-        if (!isServerRunning.get() || processWriter == null) return;
+    /**
+     * Загружает сохранённые настройки активного профиля и следит за изменением файлов.
+     * Если серверов ещё нет, создаётся сервер по умолчанию.
+     */
+    private void loadSettings() {
+        SettingsStore store = core.getSettingsStore();
+        Settings settings = new Settings();
+        try {
+            settings = store.load();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка загрузки настроек: " + e.getMessage());
+        }
+        if (registry.size() == 0) {
+            if (settings.getServers().isEmpty()) settings.server(DEFAULT_INSTANCE).setCommand(DEFAULT_COMMAND);
+            core.applySettings(settings);
+        }
+        showTelegramSettings(settings);
 
         try {
-            processWriter.write(command + "\n");
-            processWriter.flush();
-            appendToConsole("> " + command);
+            core.watchSettings(changed -> {
+                core.applySettings(changed);
+                Platform.runLater(() -> onSettingsReloaded(changed));
+            });
         } catch (IOException e) {
-            appendToConsole("Ошибка отправки команды серверу: " + e.getMessage());
+            System.err.println("Не удалось включить отслеживание файла настроек: " + e.getMessage());
         }
     }
 
-    private void startProcessMonitor() {
-        new Thread(() -> {
-            while (isServerRunning.get()) {
-                if (!serverProcess.isAlive()) {
-                    Platform.runLater(() -> {
-                        appendToConsole("Процесс сервера завершился неожиданно");
-                        cleanup();
-
-                        // Перезапускаем только если это не было ручной остановкой
-                        if (!isManualStop.get()) {
-                            appendToConsole("Попытка перезапуска сервера...");
-                            startServer();
-                        } else {
-                            appendToConsole("Сервер был остановлен вручную. Автоперезапуск не выполняется.");
-                        }
-                    });
-                    break;
-                }
+    private void onSettingsReloaded(Settings settings) {
+        for (ServerInstance instance : registry.list()) {
+            if (!instanceSelector.getItems().contains(instance.getName())) {
+                instanceSelector.getItems().add(instance.getName());
             }
-        }).start();
+        }
+        showTelegramSettings(settings);
+        pollIntervalField.setText(String.valueOf(settings.getPollIntervalHours()));
+        // Поля показывают новые значения, текущие значения полей не применяются
+        if (selected != null) show(selected);
+        appendToConsole("Настройки перечитаны из файла");
     }
 
-    private void startStatsTimer() {
-        if (statsTimer != null) statsTimer.cancel();
-
-        statsTimer = new Timer(true);
-        statsTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                requestStats();
-            }
-        }, pollIntervalHours * 3600 * 1000L, pollIntervalHours * 3600 * 1000L);
+    private void showTelegramSettings(Settings settings) {
+        botTokenField.setText(settings.getTelegramToken() == null ? "" : settings.getTelegramToken());
+        chatIdField.setText(settings.getTelegramChatId() == null ? "" : settings.getTelegramChatId());
     }
 
-    private void sendServerStats() {
-        if (!isServerRunning.get()) {
-            appendToConsole("Ошибка: сервер в данный момент не запущен");
-            return;
-        }
-
-        if (telegramBot == null) {
-            appendToConsole("Ошибка: Telegram бот не настроен. Пожалуйста, укажите токен бота и chat ID во вкладке настроек.");
-            return;
-        }
+    /**
+     * Сохраняет настройки всех серверов и Telegram в активный профиль.
+     */
+    private void saveSettings() {
+        ServerInstance instance = selected;
+        if (instance != null && !applyInstanceSettings(instance)) return;
 
-        String stats = getServerStats();
+        Settings settings = core.snapshotSettings();
+        settings.setTelegramToken(botTokenField.getText());
+        settings.setTelegramChatId(chatIdField.getText());
         try {
-            telegramBot.sendMessage(stats);
-            appendToConsole("Статистика отправлена в Telegram:\n" + stats);
-        } catch (Exception e) {
-            appendToConsole("Ошибка отправки статистики в Telegram: " + e.getMessage());
+            core.getSettingsStore().save(settings);
+        } catch (IOException e) {
+            appendToConsole("Ошибка сохранения настроек: " + e.getMessage());
         }
     }
 
-    private String getServerStats() {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return String.format(
-                """
-                        📊 Статистика сервера Minecraft (%s)
-                        🔄 Состояние: работает
-                        🧮 Память: %s
-                        👥 Онлайн: %s игроков
-                        ⏱ TPS: %s
-                        ⏳ Время работы: %s""",
-                dtf.format(LocalDateTime.now()),
-                currentStatsData.getMemory(),
-                currentStatsData.getOnlinePlayers(),
-                currentStatsData.getTps(),
-                currentStatsData.getUpTime()
-        );
+    private void appendToConsole(String text) {
+        ServerInstance instance = selected;
+        if (instance != null) instance.log(text);
     }
 
-    private void loadSettings() {
-        serverCommandField.setText("java -Xmx8G -Xms1G -Dfile.encoding=UTF-8 -jar spigot-1.20.1.jar nogui --world-dir=./worlds");
-        pollIntervalField.setText(String.valueOf(pollIntervalHours));
-    }
+    private void flushConsole(ServerInstance instance, ConsoleView view, List<ConsoleLine> batch) {
+        // Вытеснение старых строк происходит внутри кольцевого буфера за O(1) на строку
+        view.lines.appendAll(batch);
+        if (instance != selected) return;
 
-    private void saveSettings() {
-        // TODO: реализовать
+        updateLineCounter(view);
+        // Автоматическая прокрутка вниз
+        consoleOutput.scrollTo(view.lines.size() - 1);
     }
 
-    private void requestStats() {
-        appendToConsole("Запрос статистики сервера...");
-        sendCommandToServer("list");
-        sendCommandToServer("tps");
-
-        // Запускаем 5-секундный таймер перед сбором статистики
-        statsScheduler.schedule(() -> {
-            Platform.runLater(() -> {
-                appendToConsole("Сбор данных статистики...");
-                currentStatsData.collectStatsData(consoleOutput.getText());
-                sendServerStats();
-            });
-        }, 5, TimeUnit.SECONDS);
-    }
-
-    private void appendToConsole(String text) {
-        synchronized (consoleBuffer) {
-            consoleBuffer.append(text).append("\n");
-            lineCounter++;
-            Platform.runLater(() -> lineCounterLabel.setText("Строк: " + Math.min(lineCounter, 200) + "/" + MAX_LINES));
-
-            if (!consoleUpdateScheduled) {
-                consoleUpdateScheduled = true;
-                Platform.runLater(() -> {
-                    synchronized (consoleBuffer) {
-                        // Сохраняем текущую позицию скролла
-                        double scrollPosition = consoleOutput.getScrollTop();
-
-                        consoleOutput.appendText(consoleBuffer.toString());
-                        consoleBuffer.setLength(0);
-                        consoleUpdateScheduled = false;
-
-                        String[] lines = consoleOutput.getText().split("\n");
-                        if (lines.length > MAX_LINES) {
-                            String trimmedText = String.join("\n",
-                                    Arrays.copyOfRange(lines, lines.length - MAX_LINES, lines.length));
-                            consoleOutput.setText(trimmedText);
-                            lineCounter = MAX_LINES;
-                            lineCounterLabel.setText("Строк: " + lineCounter + "/" + MAX_LINES);
-                        }
-
-                        // Автоматическая прокрутка вниз
-                        consoleOutput.setScrollTop(Double.MAX_VALUE);
-                    }
-                });
-            }
-        }
+    private void updateLineCounter(ConsoleView view) {
+        long dropped = view.pipeline.getDroppedLines();
+        lineCounterLabel.setText("Строк: " + view.lines.size() + "/" + MAX_LINES
+                + (dropped > 0 ? " (пропущено: " + dropped + ")" : ""));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.AhoCorasick;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Оповещения по строкам консоли. Подстроки всех правил собраны в один автомат {@link AhoCorasick},
+ * поэтому строка проверяется за один проход по её байтам независимо от числа правил,
+ * а строки без совпадений не декодируются и не создают объектов.
+ * Каждое правило срабатывает для сервера не чаще раза за свой cooldown, пропущенные совпадения
+ * подсчитываются и указываются в следующем оповещении.
+ */
+public class AlertEngine {
+    private static final int MAX_LINE_IN_MESSAGE = 300;
+
+    /** Счётчики ограничения частоты одного сервера. */
+    private static final class Limits {
+        final long[] lastFired;
+        final int[] suppressed;
+
+        Limits(int rules) {
+            lastFired = new long[rules];
+            suppressed = new int[rules];
+        }
+    }
+
+    private final List<AlertRule> rules;
+    private final AhoCorasick automaton;
+    // Номер правила для каждого образца автомата
+    private final int[] patternRules;
+    // Правила только с регулярным выражением - проверяются на каждой строке
+    private final int[] regexOnlyRules;
+    private final ServerInstance.Listener notifications;
+    private final Executor actionExecutor;
+    private final Map<String, Limits> limits = new ConcurrentHashMap<>();
+
+    /**
+     * @param rules          правила
+     * @param notifications  получатель оповещений (ядро, которое отправляет их в Telegram)
+     * @param actionExecutor где выполняются команды и перезапуски, чтобы не задерживать чтение вывода
+     */
+    public AlertEngine(List<AlertRule> rules, ServerInstance.Listener notifications, Executor actionExecutor) {
+        this.rules = List.copyOf(rules);
+        this.notifications = notifications;
+        this.actionExecutor = actionExecutor;
+
+        List<byte[]> patterns = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Integer> regexOnly = new ArrayList<>();
+        for (int i = 0; i < this.rules.size(); i++) {
+            byte[] match = this.rules.get(i).matchBytes();
+            if (match != null) {
+                patterns.add(match);
+                owners.add(i);
+            } else {
+                regexOnly.add(i);
+            }
+        }
+        this.automaton = new AhoCorasick(patterns);
+        this.patternRules = owners.stream().mapToInt(Integer::intValue).toArray();
+        this.regexOnlyRules = regexOnly.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Загружает правила: встроенные правила, дополненные и переопределённые по id правилами из файла.
+     * alerts.defaults=false в файле отключает встроенные правила. Если файла нет, используются встроенные.
+     */
+    public static List<AlertRule> loadRules(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return mergeRules(properties);
+    }
+
+    /**
+     * Встроенные правила, дополненные и переопределённые правилами из свойств.
+     * @throws IllegalArgumentException если правило задано с ошибкой
+     */
+    public static List<AlertRule> mergeRules(Properties properties) {
+        Map<String, AlertRule> merged = new LinkedHashMap<>();
+        if (Boolean.parseBoolean(properties.getProperty("alerts.defaults", "true"))) {
+            for (AlertRule rule : AlertRule.defaults()) merged.put(rule.getId(), rule);
+        }
+        for (AlertRule rule : AlertRule.parse(properties)) merged.put(rule.getId(), rule);
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Проверяет строку вывода сервера. Вызывается из потока чтения вывода.
+     */
+    public void onLine(ServerInstance instance, ConsoleLine line) {
+        int[] patterns = automaton.matchAll(line.bytes());
+        for (int pattern : patterns) {
+            AlertRule rule = rules.get(patternRules[pattern]);
+            if (rule.getRegex() == null || rule.getRegex().matcher(line).find()) {
+                fire(instance, patternRules[pattern], line);
+            }
+        }
+        for (int index : regexOnlyRules) {
+            if (rules.get(index).getRegex().matcher(line).find()) fire(instance, index, line);
+        }
+    }
+
+    private void fire(ServerInstance instance, int index, ConsoleLine line) {
+        AlertRule rule = rules.get(index);
+        Limits state = limits.computeIfAbsent(instance.getName(), name -> new Limits(rules.size()));
+        long now = System.currentTimeMillis();
+        int suppressed;
+        synchronized (state) {
+            if (state.lastFired[index] != 0 && now - state.lastFired[index] < rule.getCooldown().toMillis()) {
+                state.suppressed[index]++;
+                return;
+            }
+            state.lastFired[index] = now;
+            suppressed = state.suppressed[index];
+            state.suppressed[index] = 0;
+        }
+
+        for (AlertRule.Action action : rule.getActions()) {
+            switch (action) {
+                case NOTIFY -> notifications.onNotification(instance, "alert:" + rule.getId(),
+                        formatMessage(rule, line, suppressed), rule.getPriority());
+                case COMMAND -> actionExecutor.execute(() -> instance.sendCommand(rule.getCommand()));
+                case RESTART -> actionExecutor.execute(() -> {
+                    instance.log("Перезапуск по правилу оповещения " + rule.getId());
+                    instance.restart();
+                });
+            }
+        }
+    }
+
+    private static String formatMessage(AlertRule rule, ConsoleLine line, int suppressed) {
+        String text = line.toString();
+        if (text.length() > MAX_LINE_IN_MESSAGE) text = text.substring(0, MAX_LINE_IN_MESSAGE) + "…";
+        StringBuilder sb = new StringBuilder();
+        sb.append(rule.getMessage() != null ? rule.getMessage() : "🔔 Сработало правило " + rule.getId());
+        sb.append('\n').append(text);
+        if (suppressed > 0) {
+            sb.append("\n(ещё совпадений с прошлого оповещения: ").append(suppressed).append(')');
+        }
+        return sb.toString();
+    }
+
+    public List<AlertRule> getRules() {
+        return rules;
+    }
+}
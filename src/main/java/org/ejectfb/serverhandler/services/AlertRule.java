@@ -0,0 +1,174 @@
+package org.ejectfb.serverhandler.services;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Правило оповещения по строкам консоли.
+ * Строка подходит, если содержит подстроку match и (если задано) соответствует регулярному выражению regex.
+ * Подстроки всех правил ищутся одним автоматом, а regex проверяется только у строк, где подстрока уже найдена.
+ * Правило только с regex проверяется на каждой строке и требует её декодирования - его лучше дополнять match.
+ * <p>
+ * Формат в файле настроек:
+ * <pre>
+ * alert.lag.match=Can't keep up!
+ * alert.lag.action=notify
+ * alert.lag.cooldown=600
+ * alert.oom.match=OutOfMemoryError
+ * alert.oom.action=notify,restart
+ * alert.oom.priority=critical
+ * alert.join.regex=(?i)\\bgriefer\\d*\\b joined the game
+ * alert.join.action=command
+ * alert.join.command=kick griefer
+ * </pre>
+ */
+public class AlertRule {
+    public enum Action {
+        NOTIFY, COMMAND, RESTART
+    }
+
+    private static final String PREFIX = "alert.";
+    private static final Duration DEFAULT_COOLDOWN = Duration.ofMinutes(5);
+
+    private final String id;
+    private String match;
+    private Pattern regex;
+    private final Set<Action> actions = EnumSet.noneOf(Action.class);
+    private String command;
+    private Duration cooldown = DEFAULT_COOLDOWN;
+    private NotificationDigest.Priority priority = NotificationDigest.Priority.NORMAL;
+    private String message;
+
+    public AlertRule(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Правила по умолчанию: отставание тиков, нехватка памяти, watchdog и попытки входа не из белого списка.
+     */
+    public static List<AlertRule> defaults() {
+        List<AlertRule> rules = new ArrayList<>();
+        rules.add(rule("lag", "Can't keep up!", NotificationDigest.Priority.NORMAL, Duration.ofMinutes(10),
+                "🐢 Сервер не успевает обрабатывать тики"));
+        rules.add(rule("oom", "java.lang.OutOfMemoryError", NotificationDigest.Priority.CRITICAL,
+                Duration.ofMinutes(10), "💥 Серверу не хватает памяти"));
+        rules.add(rule("watchdog", "The server has stopped responding!", NotificationDigest.Priority.CRITICAL,
+                Duration.ofMinutes(5), "🧊 Сервер завис (watchdog)"));
+        rules.add(rule("watchdog-paper", "The server has not responded for", NotificationDigest.Priority.CRITICAL,
+                Duration.ofMinutes(5), "🧊 Сервер завис (watchdog)"));
+        rules.add(rule("whitelist", "You are not white-listed on this server", NotificationDigest.Priority.NORMAL,
+                Duration.ofMinutes(5), "🚷 Попытка входа не из белого списка"));
+        return rules;
+    }
+
+    private static AlertRule rule(String id, String match, NotificationDigest.Priority priority,
+                                  Duration cooldown, String message) {
+        AlertRule rule = new AlertRule(id);
+        rule.match = match;
+        rule.actions.add(Action.NOTIFY);
+        rule.priority = priority;
+        rule.cooldown = cooldown;
+        rule.message = message;
+        return rule;
+    }
+
+    /**
+     * Читает правила из свойств вида alert.&lt;id&gt;.&lt;параметр&gt;.
+     * @throws IllegalArgumentException если правило задано с ошибкой
+     */
+    public static List<AlertRule> parse(Properties properties) {
+        Set<String> ids = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(PREFIX)) continue;
+            int dot = key.indexOf('.', PREFIX.length());
+            if (dot > PREFIX.length()) ids.add(key.substring(PREFIX.length(), dot));
+        }
+
+        List<AlertRule> rules = new ArrayList<>();
+        for (String id : ids) {
+            String base = PREFIX + id + ".";
+            AlertRule rule = new AlertRule(id);
+            rule.match = emptyToNull(properties.getProperty(base + "match"));
+            String regex = emptyToNull(properties.getProperty(base + "regex"));
+            if (regex != null) rule.regex = Pattern.compile(regex);
+            if (rule.match == null && rule.regex == null) {
+                throw new IllegalArgumentException("Правило " + id + ": не задано ни match, ни regex");
+            }
+
+            for (String action : properties.getProperty(base + "action", "notify").split(",")) {
+                if (action.isBlank()) continue;
+                try {
+                    rule.actions.add(Action.valueOf(action.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Правило " + id + ": неизвестное действие " + action.trim());
+                }
+            }
+            rule.command = emptyToNull(properties.getProperty(base + "command"));
+            if (rule.actions.contains(Action.COMMAND) && rule.command == null) {
+                throw new IllegalArgumentException("Правило " + id + ": для действия command не задана команда");
+            }
+
+            String cooldown = properties.getProperty(base + "cooldown");
+            if (cooldown != null) rule.cooldown = Duration.ofSeconds(Long.parseLong(cooldown.trim()));
+            String priority = properties.getProperty(base + "priority");
+            if (priority != null) {
+                rule.priority = NotificationDigest.Priority.valueOf(priority.trim().toUpperCase(Locale.ROOT));
+            }
+            rule.message = emptyToNull(properties.getProperty(base + "message"));
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Подстрока в байтах UTF-8 для автомата или null, если правило задано только регулярным выражением.
+     */
+    byte[] matchBytes() {
+        return match == null ? null : match.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public String getMatch() {
+        return match;
+    }
+
+    public Pattern getRegex() {
+        return regex;
+    }
+
+    public Set<Action> getActions() {
+        return actions;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public Duration getCooldown() {
+        return cooldown;
+    }
+
+    public NotificationDigest.Priority getPriority() {
+        return priority;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,186 @@
+package org.ejectfb.serverhandler.services;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Очередь команд в stdin сервера с единственным писателем.
+ * Команды из любых потоков (UI, API, оповещения, расписание) складываются в очереди по приоритетам,
+ * а пишет их одна задача в пуле ввода-вывода: сначала все срочные, затем обычные, затем фоновые.
+ * Всё, что накопилось к моменту записи, уходит одной пачкой с одним flush.
+ * Одновременно работает не больше одной задачи записи, поэтому команды не перемешиваются.
+ */
+public class CommandQueue implements AutoCloseable {
+    /** Приоритет команды. Срочные обгоняют уже стоящие в очереди обычные и фоновые. */
+    public enum Lane {
+        HIGH, NORMAL, LOW;
+
+        /**
+         * Приоритет по умолчанию: остановка и управление сохранением мира - срочные, остальное - обычное.
+         */
+        public static Lane of(String command) {
+            String name = command.trim().toLowerCase(Locale.ROOT);
+            int space = name.indexOf(' ');
+            if (space > 0) name = name.substring(0, space);
+            return switch (name) {
+                case "stop", "save-all", "save-off", "save-on" -> HIGH;
+                default -> NORMAL;
+            };
+        }
+    }
+
+    private static final int LANE_CAPACITY = Integer.getInteger("commands.queueCapacity", 1024);
+    // Сколько команд пишется до flush, чтобы длинная очередь не копилась в буфере писателя
+    private static final int MAX_BATCH = 256;
+
+    private final Writer writer;
+    private final Executor writerExecutor;
+    private final Consumer<String> sent;
+    private final Consumer<String> log;
+    private final List<Queue<String>> lanes = new ArrayList<>(Lane.values().length);
+    // Число необработанных сигналов о новых командах; задача записи запускается при переходе из 0
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param writer         stdin процесса
+     * @param writerExecutor пул, в котором выполняется запись
+     * @param sent           получает каждую записанную команду после flush
+     * @param log            сообщения об ошибках записи
+     */
+    public CommandQueue(Writer writer, Executor writerExecutor, Consumer<String> sent, Consumer<String> log) {
+        this.writer = writer;
+        this.writerExecutor = writerExecutor;
+        this.sent = sent;
+        this.log = log;
+        for (int i = 0; i < Lane.values().length; i++) {
+            lanes.add(new ArrayBlockingQueue<>(LANE_CAPACITY));
+        }
+    }
+
+    /**
+     * Ставит команду в очередь. Никогда не блокирует вызывающий поток.
+     * @return false, если очередь закрыта или переполнена
+     */
+    public boolean offer(String command, Lane lane) {
+        if (closed || !lanes.get(lane.ordinal()).offer(command)) {
+            dropped.increment();
+            return false;
+        }
+        if (pending.getAndIncrement() == 0) writerExecutor.execute(this::drain);
+        return true;
+    }
+
+    /**
+     * Ставит несколько команд одним элементом очереди: они пишутся подряд, одним flush,
+     * и команды других очередей не попадают между ними. Никогда не блокирует вызывающий поток.
+     * @return false, если очередь закрыта или переполнена
+     */
+    public boolean offer(List<String> commands, Lane lane) {
+        if (commands.isEmpty()) return true;
+        return offer(String.join("\n", commands), lane);
+    }
+
+    private void drain() {
+        int missed = pending.get();
+        do {
+            writeBatch();
+            missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void writeBatch() {
+        String[] batch = new String[MAX_BATCH];
+        while (true) {
+            int size = 0;
+            String command;
+            while (size < MAX_BATCH && (command = poll()) != null) {
+                batch[size++] = command;
+            }
+            if (size == 0 || closed) return;
+
+            try {
+                for (int i = 0; i < size; i++) {
+                    writer.write(batch[i]);
+                    writer.write('\n');
+                }
+                writer.flush();
+            } catch (IOException e) {
+                log.accept("Ошибка отправки команды серверу: " + e.getMessage());
+                // Поток stdin закрыт - процесс завершается, ни эта пачка, ни остальные команды уже не дойдут
+                for (int i = 0; i < size; i++) {
+                    dropped.add(batch[i].split("\n").length);
+                }
+                clear();
+                return;
+            }
+            flushes.increment();
+            for (int i = 0; i < size; i++) {
+                // Пачка из offer(List) - несколько команд в одном элементе
+                for (String line : batch[i].split("\n")) {
+                    written.increment();
+                    sent.accept(line);
+                }
+            }
+        }
+    }
+
+    private String poll() {
+        for (Queue<String> lane : lanes) {
+            String command = lane.poll();
+            if (command != null) return command;
+        }
+        return null;
+    }
+
+    private void clear() {
+        for (Queue<String> lane : lanes) {
+            int size = lane.size();
+            lane.clear();
+            dropped.add(size);
+        }
+    }
+
+    /**
+     * Отбрасывает неотправленные команды и закрывает stdin процесса.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        clear();
+        writer.close();
+    }
+
+    // Счётчики
+
+    public long getWrittenCommands() {
+        return written.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public long getDroppedCommands() {
+        return dropped.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Queue<String> lane : lanes) size += lane.size();
+        return size;
+    }
+}
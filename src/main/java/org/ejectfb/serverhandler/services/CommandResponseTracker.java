@@ -0,0 +1,102 @@
+package org.ejectfb.serverhandler.services;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Сопоставляет команды, отправленные серверу, со строками ответа в его выводе.
+ * Future завершается, как только в выводе появляется подходящая строка,
+ * либо с TimeoutException по истечении таймаута команды.
+ * Повторный запрос той же команды, пока первый ещё ждёт ответа, получает тот же future.
+ */
+public class CommandResponseTracker {
+    private static final class Waiter {
+        final Predicate<String> matcher;
+        final CompletableFuture<String> future;
+
+        Waiter(Predicate<String> matcher, CompletableFuture<String> future) {
+            this.matcher = matcher;
+            this.future = future;
+        }
+    }
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Consumer<String> sender;
+
+    /**
+     * @param sender отправляет команду серверу
+     */
+    public CommandResponseTracker(Consumer<String> sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Отправляет команду и ждёт строку ответа.
+     * @param command  команда серверу
+     * @param response условие, которому должна удовлетворять строка ответа
+     * @param timeout  максимальное время ожидания ответа
+     */
+    public CompletableFuture<String> request(String command, Predicate<String> response, Duration timeout) {
+        boolean[] created = {false};
+        CompletableFuture<String> future = inFlight.computeIfAbsent(command, c -> {
+            created[0] = true;
+            return expect(response, timeout);
+        });
+
+        if (created[0]) {
+            future.whenComplete((line, error) -> inFlight.remove(command, future));
+            sender.accept(command);
+        }
+        return future;
+    }
+
+    /**
+     * Ожидает строку вывода без отправки команды.
+     */
+    public CompletableFuture<String> expect(Predicate<String> response, Duration timeout) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Waiter waiter = new Waiter(response, future);
+        waiters.add(waiter);
+        future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((line, error) -> waiters.remove(waiter));
+        return future;
+    }
+
+    /**
+     * Передаёт очередную строку вывода сервера. Вызывается из потока чтения процесса.
+     */
+    public void onLine(String line) {
+        if (waiters.isEmpty()) return;
+
+        for (Waiter waiter : waiters) {
+            if (waiter.matcher.test(line)) {
+                waiter.future.complete(line);
+            }
+        }
+    }
+
+    /**
+     * Есть ли запросы, ожидающие ответа. Пока их нет, строки вывода можно не декодировать.
+     */
+    public boolean hasPending() {
+        return !waiters.isEmpty();
+    }
+
+    /**
+     * Отменяет все ожидающие запросы, например при остановке сервера.
+     */
+    public void cancelAll() {
+        for (Waiter waiter : waiters) {
+            waiter.future.completeExceptionally(new CancellationException("Сервер остановлен"));
+        }
+    }
+}
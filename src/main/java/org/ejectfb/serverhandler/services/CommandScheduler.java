@@ -0,0 +1,110 @@
+package org.ejectfb.serverhandler.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выполняет задания {@link ScheduledCommand} в общем планировщике.
+ * У каждого задания одна отложенная задача до ближайшего срабатывания, после которого
+ * планируется следующее - между срабатываниями планировщик ничего не делает.
+ * Время считается по часам системы в её часовом поясе.
+ */
+public class CommandScheduler implements AutoCloseable {
+    private final List<ScheduledCommand> schedule;
+    private final ServerRegistry registry;
+    private final ScheduledExecutorService scheduler;
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param schedule  задания
+     * @param registry  серверы, на которых они выполняются
+     * @param scheduler общий планировщик
+     */
+    public CommandScheduler(List<ScheduledCommand> schedule, ServerRegistry registry, ScheduledExecutorService scheduler) {
+        this.schedule = List.copyOf(schedule);
+        this.registry = registry;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Загружает задания из файла. Если файла нет, расписание пустое.
+     * @throws IllegalArgumentException если задание задано с ошибкой
+     */
+    public static List<ScheduledCommand> load(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return ScheduledCommand.parse(properties);
+    }
+
+    public synchronized void start() {
+        ZonedDateTime now = ZonedDateTime.now();
+        for (ScheduledCommand entry : schedule) {
+            scheduleNext(entry, now);
+        }
+    }
+
+    private synchronized void scheduleNext(ScheduledCommand entry, ZonedDateTime after) {
+        if (closed) return;
+        ZonedDateTime next = entry.getCron().next(after);
+        if (next == null) return;
+        long delay = Math.max(0, ChronoUnit.MILLIS.between(ZonedDateTime.now(), next));
+        tasks.removeIf(ScheduledFuture::isDone);
+        tasks.add(scheduler.schedule(() -> {
+            try {
+                fire(entry);
+            } finally {
+                // От времени срабатывания, а не от текущего: задание не пропускается и не повторяется
+                scheduleNext(entry, next);
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void fire(ScheduledCommand entry) {
+        for (ServerInstance instance : registry.list()) {
+            if (!entry.appliesTo(instance)) continue;
+            switch (entry.getAction()) {
+                case COMMAND -> {
+                    if (instance.isRunning()) instance.sendCommands(entry.getCommands(), entry.getLane());
+                }
+                case START -> instance.start();
+                case STOP -> {
+                    if (instance.isRunning()) instance.stop();
+                }
+                case RESTART -> {
+                    if (instance.isRunning()) {
+                        instance.log("Перезапуск по расписанию (" + entry.getId() + ")");
+                        instance.restart();
+                    }
+                }
+                case BACKUP -> instance.backup();
+            }
+        }
+    }
+
+    public List<ScheduledCommand> getSchedule() {
+        return schedule;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (ScheduledFuture<?> task : tasks) task.cancel(false);
+        tasks.clear();
+    }
+}
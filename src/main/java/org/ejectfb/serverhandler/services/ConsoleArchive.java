@@ -0,0 +1,598 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Архив всех строк консоли на диске, разбитый на сегменты.
+ * Формат записи: [время:8][длина:4][UTF-8 байты][длина:4] - хвостовая длина позволяет читать назад.
+ * Для каждого сегмента ведётся разреженный индекс (время, смещение) для поиска по времени.
+ * Запись выполняет долгоживущая задача в пуле ввода-вывода через FileChannel, поток чтения процесса
+ * никогда не блокируется.
+ * Закрытые сегменты сжимаются в gzip в пуле ввода-вывода, чтобы не задерживать запись,
+ * активный читается через отображение в память.
+ */
+public class ConsoleArchive implements AutoCloseable {
+    /** Строка архива. */
+    public static final class Entry {
+        public final long timestamp;
+        public final String line;
+
+        public Entry(long timestamp, String line) {
+            this.timestamp = timestamp;
+            this.line = line;
+        }
+    }
+
+    /** Строка, ожидающая записи: байты строки сервера пишутся как есть, без перекодирования. */
+    private static final class Pending {
+        final long timestamp;
+        final ConsoleLine line;
+
+        Pending(long timestamp, ConsoleLine line) {
+            this.timestamp = timestamp;
+            this.line = line;
+        }
+    }
+
+    private static final String PREFIX = "console-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String GZ_SUFFIX = ".log.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int HEADER = 12;
+    private static final int TRAILER = 4;
+    // Запись индекса делается не реже, чем раз в столько байт сегмента
+    private static final long INDEX_INTERVAL = 64 * 1024;
+    // Как часто поток записи проверяет флаг закрытия, когда строк нет
+    private static final long POLL_MILLIS = 200;
+    // Сколько при закрытии ждать записи очереди и сжатия последнего сегмента
+    private static final long CLOSE_TIMEOUT_MILLIS = 30_000;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeMillis;
+    private final int maxSegments;
+    private final BlockingQueue<Pending> queue;
+    private final LongAdder droppedLines = new LongAdder();
+    private final Executor ioPool;
+    // Задача записи, живёт до закрытия архива
+    private final CompletableFuture<Void> writer;
+    private volatile boolean closed;
+    private volatile Consumer<Path> sealListener;
+    // Сегменты сжимаются по одному и по порядку, удаление старых - после сжатия
+    private CompletableFuture<Void> compression = CompletableFuture.completedFuture(null);
+
+    // Состояние активного сегмента, меняется только потоком записи
+    private FileChannel channel;
+    private FileChannel indexChannel;
+    private volatile Path activePath;
+    private long activeStartedAt;
+    private long lastIndexedOffset = -INDEX_INTERVAL;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(256 * 1024);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(16);
+    private volatile long committedSize = 0;
+
+    public ConsoleArchive(Path directory, Executor ioPool) throws IOException {
+        this(directory, ioPool, 64L * 1024 * 1024, TimeUnit.DAYS.toMillis(1), 500, 65_536);
+    }
+
+    /**
+     * @param directory           каталог архива
+     * @param ioPool              пул, в котором работает запись и сжимаются закрытые сегменты
+     * @param maxSegmentBytes     размер, после которого сегмент закрывается
+     * @param maxSegmentAgeMillis возраст, после которого сегмент закрывается
+     * @param maxSegments         сколько сегментов хранить, старые удаляются
+     * @param queueCapacity       сколько строк может ждать записи, лишние отбрасываются
+     */
+    public ConsoleArchive(Path directory, Executor ioPool, long maxSegmentBytes, long maxSegmentAgeMillis,
+                          int maxSegments, int queueCapacity) throws IOException {
+        this.directory = directory;
+        this.ioPool = ioPool;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+        this.maxSegments = maxSegments;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Files.createDirectories(directory);
+        sealLeftoverSegments();
+        openSegment(System.currentTimeMillis());
+
+        writer = CompletableFuture.runAsync(this::writeLoop, ioPool);
+    }
+
+    /**
+     * Ставит строку в очередь на запись. Никогда не блокирует.
+     */
+    public void append(long timestamp, String line) {
+        append(timestamp, ConsoleLine.of(line));
+    }
+
+    /**
+     * Ставит строку в очередь на запись. Никогда не блокирует.
+     */
+    public void append(long timestamp, ConsoleLine line) {
+        if (closed || !queue.offer(new Pending(timestamp, line))) droppedLines.increment();
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Получатель закрытых сегментов: вызывается в пуле ввода-вывода после сжатия сегмента.
+     * Файлы, которые он кладёт рядом с сегментом (console-&lt;время&gt;.*), удаляются вместе с ним.
+     */
+    public void setSealListener(Consumer<Path> sealListener) {
+        this.sealListener = sealListener;
+    }
+
+    /**
+     * Дописывает строки из очереди, закрывает файлы и ждёт сжатия закрытых сегментов.
+     * Задача записи не прерывается: прерывание во время записи в FileChannel закрывает канал,
+     * и хвост консоли терялся бы.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.get(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            CompletableFuture<Void> pending;
+            synchronized (this) {
+                pending = compression;
+            }
+            pending.get(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Несжатый сегмент сожмётся при следующем открытии архива
+            System.err.println("Архив консоли закрыт не полностью: " + e);
+        }
+    }
+
+    // Запись
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(4096);
+        try {
+            // После закрытия дописываем всё, что успело попасть в очередь
+            while (!closed || !queue.isEmpty()) {
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, 4095);
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи архива консоли: " + e.getMessage());
+        } finally {
+            try {
+                channel.close();
+                indexChannel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) throws IOException {
+        for (Pending entry : batch) {
+            if (committedSize + writeBuffer.position() >= maxSegmentBytes
+                    || entry.timestamp - activeStartedAt >= maxSegmentAgeMillis) {
+                flushWriteBuffer();
+                rotate(entry.timestamp);
+            }
+
+            byte[] bytes = entry.line.bytes();
+            int recordSize = HEADER + bytes.length + TRAILER;
+            if (writeBuffer.remaining() < recordSize) flushWriteBuffer();
+
+            long offset = committedSize + writeBuffer.position();
+            if (offset - lastIndexedOffset >= INDEX_INTERVAL) {
+                writeIndex(entry.timestamp, offset);
+            }
+
+            if (recordSize > writeBuffer.capacity()) {
+                ByteBuffer big = ByteBuffer.allocate(recordSize);
+                big.putLong(entry.timestamp).putInt(bytes.length).put(bytes).putInt(bytes.length).flip();
+                while (big.hasRemaining()) channel.write(big);
+                committedSize += recordSize;
+            } else {
+                writeBuffer.putLong(entry.timestamp).putInt(bytes.length).put(bytes).putInt(bytes.length);
+            }
+        }
+        flushWriteBuffer();
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) channel.write(writeBuffer);
+        writeBuffer.clear();
+        committedSize = channel.position();
+    }
+
+    private void writeIndex(long timestamp, long offset) throws IOException {
+        indexBuffer.clear();
+        indexBuffer.putLong(timestamp).putLong(offset).flip();
+        while (indexBuffer.hasRemaining()) indexChannel.write(indexBuffer);
+        lastIndexedOffset = offset;
+    }
+
+    private void openSegment(long startedAt) throws IOException {
+        activeStartedAt = startedAt;
+        activePath = directory.resolve(PREFIX + startedAt + LOG_SUFFIX);
+        channel = FileChannel.open(activePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        indexChannel = FileChannel.open(directory.resolve(PREFIX + startedAt + INDEX_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        committedSize = channel.size();
+        lastIndexedOffset = -INDEX_INTERVAL;
+    }
+
+    private void rotate(long nextStartedAt) throws IOException {
+        Path sealed = activePath;
+        channel.close();
+        indexChannel.close();
+        openSegment(Math.max(nextStartedAt, activeStartedAt + 1));
+        // Сжатие 64 МБ заняло бы поток записи на секунды, пока очередь строк переполняется
+        scheduleSeal(sealed, false);
+    }
+
+    /**
+     * Ставит сжатие сегмента в очередь пула ввода-вывода.
+     * @param repair отрезать недописанную запись - для сегментов, оставшихся после аварийного завершения
+     */
+    private synchronized void scheduleSeal(Path log, boolean repair) {
+        try {
+            compression = compression.thenRunAsync(() -> seal(log, repair), ioPool);
+        } catch (RejectedExecutionException e) {
+            // Пул уже остановлен - сегмент сожмётся при следующем открытии архива
+        }
+    }
+
+    private void seal(Path log, boolean repair) {
+        try {
+            if (repair) truncateBrokenTail(log);
+            Path sealed = compress(log);
+            Consumer<Path> listener = sealListener;
+            if (listener != null) listener.accept(sealed);
+            enforceRetention();
+        } catch (IOException e) {
+            System.err.println("Ошибка сжатия сегмента архива " + log + ": " + e.getMessage());
+        }
+    }
+
+    // Конструктор вызывается и из потока UI, поэтому сегменты прошлого запуска сжимаются в пуле
+    private void sealLeftoverSegments() throws IOException {
+        for (Path log : listFiles(LOG_SUFFIX)) {
+            scheduleSeal(log, true);
+        }
+    }
+
+    // Отрезает недописанную запись, оставшуюся после аварийного завершения.
+    // Файл читается в буфер, а не отображается в память: на Windows отображённый файл нельзя укоротить
+    private static void truncateBrokenTail(Path log) throws IOException {
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024).limit(0);
+            long bufferStart = 0;
+            long valid = 0;
+            while (valid + HEADER <= size) {
+                if (valid + HEADER > bufferStart + buffer.limit()) {
+                    bufferStart = valid;
+                    readAt(ch, buffer, bufferStart);
+                }
+                int len = buffer.getInt((int) (valid - bufferStart) + 8);
+                long end = valid + HEADER + len + TRAILER;
+                if (len < 0 || end > size) break;
+                if (end > bufferStart + buffer.limit()) {
+                    bufferStart = end - TRAILER;
+                    readAt(ch, buffer, bufferStart);
+                }
+                if (buffer.getInt((int) (end - TRAILER - bufferStart)) != len) break;
+                valid = end;
+            }
+            if (valid < size) ch.truncate(valid);
+        }
+    }
+
+    // Заполняет буфер данными файла с позиции position (меньше - только в конце файла)
+    private static void readAt(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (ch.read(buffer, position + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+    }
+
+    private static Path compress(Path log) throws IOException {
+        Path gz = log.resolveSibling(log.getFileName().toString().replace(LOG_SUFFIX, GZ_SUFFIX));
+        Path tmp = gz.resolveSibling(gz.getFileName() + ".tmp");
+        try (InputStream in = Files.newInputStream(log);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+            in.transferTo(out);
+        }
+        // Читатели видят либо несжатый сегмент, либо полностью записанный архив
+        Files.move(tmp, gz, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(log);
+        return gz;
+    }
+
+    private void enforceRetention() throws IOException {
+        List<Path> sealed = listFiles(GZ_SUFFIX);
+        for (int i = 0; i < sealed.size() - maxSegments; i++) {
+            deleteSegment(sealed.get(i));
+        }
+    }
+
+    // Удаляет сегмент вместе с его индексами
+    private void deleteSegment(Path segment) throws IOException {
+        String prefix = PREFIX + segmentStart(segment) + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(p -> p.getFileName().toString().startsWith(prefix)).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Чтение
+
+    /**
+     * Последние n строк архива, в хронологическом порядке.
+     */
+    public List<Entry> tail(int n) throws IOException {
+        Deque<Entry> result = new ArrayDeque<>(Math.min(n, 4096));
+        List<Path> segments = segments();
+        for (int i = segments.size() - 1; i >= 0 && result.size() < n; i--) {
+            List<Entry> fromSegment = tailOfSegment(segments.get(i), n - result.size());
+            for (int j = fromSegment.size() - 1; j >= 0; j--) result.addFirst(fromSegment.get(j));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Передаёт строки за интервал времени [from, to] в хронологическом порядке.
+     * Обход прекращается, когда visitor возвращает false.
+     */
+    public void scan(long from, long to, Predicate<Entry> visitor) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            long segmentStart = segmentStart(segments.get(i));
+            long nextStart = i + 1 < segments.size() ? segmentStart(segments.get(i + 1)) : Long.MAX_VALUE;
+            if (nextStart < from || segmentStart > to) continue;
+            if (!scanSegment(segments.get(i), from, to, visitor)) return;
+        }
+    }
+
+    /**
+     * Сегменты архива от старых к новым (активный - последний).
+     */
+    public List<Path> segments() throws IOException {
+        List<Path> result = listFiles(GZ_SUFFIX);
+        for (Path log : listFiles(LOG_SUFFIX)) {
+            // Пока сегмент сжимается, может существовать и его сжатая копия
+            if (!Files.exists(log.resolveSibling(log.getFileName() + ".gz"))) result.add(log);
+        }
+        result.sort(Comparator.comparingLong(ConsoleArchive::segmentStart));
+        return result;
+    }
+
+    /**
+     * Закрытый (сжатый) сегмент больше не меняется.
+     */
+    public static boolean isSealed(Path segment) {
+        return segment.getFileName().toString().endsWith(GZ_SUFFIX);
+    }
+
+    /**
+     * Время открытия сегмента, все его строки не раньше этого времени.
+     */
+    public static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        int end = name.indexOf('.', PREFIX.length());
+        return Long.parseLong(name.substring(PREFIX.length(), end));
+    }
+
+    interface RecordVisitor {
+        boolean visit(long offset, long timestamp, String line);
+    }
+
+    /**
+     * Обходит записи сегмента начиная со смещения, передавая смещение каждой записи.
+     */
+    void forEachRecord(Path segment, long startOffset, RecordVisitor visitor) throws IOException {
+        try (DataInputStream in = openRecords(segment, startOffset)) {
+            long offset = startOffset;
+            while (true) {
+                long timestamp;
+                byte[] bytes;
+                try {
+                    timestamp = in.readLong();
+                    bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                long recordOffset = offset;
+                offset += HEADER + bytes.length + TRAILER;
+                if (!visitor.visit(recordOffset, timestamp, new String(bytes, StandardCharsets.UTF_8))) return;
+            }
+        }
+    }
+
+    /**
+     * Смещения из разреженного индекса сегмента - границы блоков по 64 КБ.
+     */
+    long[] indexOffsets(Path segment) throws IOException {
+        Path index = indexPath(segment);
+        if (!Files.exists(index)) return new long[] {0};
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(index));
+        long[] offsets = new long[data.limit() / 16];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = data.getLong(i * 16 + 8);
+        }
+        return offsets.length == 0 ? new long[] {0} : offsets;
+    }
+
+    /**
+     * Читает все строки сегмента начиная с записи, ближайшей по индексу к from.
+     */
+    public boolean scanSegment(Path segment, long from, long to, Predicate<Entry> visitor) throws IOException {
+        long startOffset = indexedOffset(segment, from);
+        try (DataInputStream in = openRecords(segment, startOffset)) {
+            while (true) {
+                Entry entry = readRecord(in);
+                if (entry == null) return true;
+                if (entry.timestamp < from) continue;
+                if (entry.timestamp > to) return false;
+                if (!visitor.test(entry)) return false;
+            }
+        }
+    }
+
+    private List<Entry> tailOfSegment(Path segment, int n) throws IOException {
+        if (segment.toString().endsWith(LOG_SUFFIX)) {
+            return tailOfActive(segment, n);
+        }
+
+        // Сжатый сегмент читается потоком, в памяти держим только последние n строк
+        Deque<Entry> last = new ArrayDeque<>();
+        try (DataInputStream in = openRecords(segment, 0)) {
+            Entry entry;
+            while ((entry = readRecord(in)) != null) {
+                if (last.size() == n) last.removeFirst();
+                last.addLast(entry);
+            }
+        }
+        return new ArrayList<>(last);
+    }
+
+    private List<Entry> tailOfActive(Path segment, int n) throws IOException {
+        List<Entry> reversed = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = segment.equals(activePath) ? Math.min(committedSize, ch.size()) : ch.size();
+            if (size == 0) return reversed;
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long pos = size;
+            while (pos >= HEADER + TRAILER && reversed.size() < n) {
+                int len = map.getInt((int) (pos - TRAILER));
+                long start = pos - TRAILER - len - HEADER;
+                if (len < 0 || start < 0) break;
+                byte[] bytes = new byte[len];
+                map.get((int) start + HEADER, bytes);
+                reversed.add(new Entry(map.getLong((int) start), new String(bytes, StandardCharsets.UTF_8)));
+                pos = start;
+            }
+        }
+        List<Entry> result = new ArrayList<>(reversed.size());
+        for (int i = reversed.size() - 1; i >= 0; i--) result.add(reversed.get(i));
+        return result;
+    }
+
+    private DataInputStream openRecords(Path segment, long offset) throws IOException {
+        InputStream raw = Files.newInputStream(segment);
+        InputStream in = segment.toString().endsWith(GZ_SUFFIX)
+                ? new GZIPInputStream(raw, 64 * 1024)
+                : raw;
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        data.skipNBytes(offset);
+        return data;
+    }
+
+    private static Entry readRecord(DataInputStream in) throws IOException {
+        try {
+            long timestamp = in.readLong();
+            int len = in.readInt();
+            byte[] bytes = new byte[len];
+            in.readFully(bytes);
+            in.readInt();
+            return new Entry(timestamp, new String(bytes, StandardCharsets.UTF_8));
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Последнее смещение из индекса, время которого не позже from
+    private long indexedOffset(Path segment, long from) throws IOException {
+        Path index = indexPath(segment);
+        if (!Files.exists(index)) return 0;
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(index));
+        int entries = data.limit() / 16;
+        int lo = 0;
+        int hi = entries - 1;
+        long offset = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (data.getLong(mid * 16) <= from) {
+                offset = data.getLong(mid * 16 + 8);
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    private List<Path> listFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> result = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .toList());
+            result.sort(Comparator.comparingLong(ConsoleArchive::segmentStart));
+            return result;
+        }
+    }
+
+    private static Path indexPath(Path segment) {
+        return companionPath(segment, INDEX_SUFFIX);
+    }
+
+    /**
+     * Файл рядом с сегментом с тем же временем в имени, удаляется вместе с сегментом.
+     */
+    static Path companionPath(Path segment, String suffix) {
+        return segment.resolveSibling(PREFIX + segmentStart(segment) + suffix);
+    }
+}
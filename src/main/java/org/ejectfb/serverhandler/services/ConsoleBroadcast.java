@@ -0,0 +1,113 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.lang.invoke.VarHandle;
+import java.util.List;
+
+/**
+ * Общий кольцевой буфер строк консоли для раздачи многим подписчикам.
+ * Строка кладётся один раз, каждый подписчик читает её по своему курсору (номеру строки),
+ * поэтому строки не копируются на каждого клиента. Запись никогда не ждёт читателей:
+ * отставший больше чем на ёмкость буфера подписчик пропускает вытесненные строки.
+ */
+public class ConsoleBroadcast {
+    private final ConsoleLine[] ring;
+    // Номер следующей строки; запись слота происходит до увеличения, поэтому читатель видит заполненные слоты
+    private volatile long head = 0;
+    // Номер, следующий за последним занятым слотом: больше head, пока publish пишет слот
+    private volatile long claimed = 0;
+    private final Object signal = new Object();
+    private int waiting = 0;
+    private volatile boolean closed = false;
+
+    public ConsoleBroadcast(int capacity) {
+        this.ring = new ConsoleLine[capacity];
+    }
+
+    /**
+     * Добавляет строку. Не блокируется на подписчиках.
+     */
+    public void publish(ConsoleLine line) {
+        synchronized (ring) {
+            long seq = head;
+            claimed = seq + 1;
+            // Слот не должен стать виден читателю раньше, чем claimed
+            VarHandle.storeStoreFence();
+            ring[(int) (seq % ring.length)] = line;
+            head = seq + 1;
+        }
+        // Будим только если кто-то ждёт - при отсутствии подписчиков запись стоит одной проверки
+        synchronized (signal) {
+            if (waiting > 0) signal.notifyAll();
+        }
+    }
+
+    /**
+     * Номер, который получит следующая строка. Курсор нового подписчика без истории.
+     */
+    public long head() {
+        return head;
+    }
+
+    /**
+     * Курсор, с которого видны последние n строк.
+     */
+    public long tailCursor(int n) {
+        long h = head;
+        return Math.max(0, h - Math.min(n, Math.min(h, ring.length)));
+    }
+
+    /**
+     * Читает строки начиная с курсора, не больше max.
+     * @param out получает строки
+     * @return новый курсор; если подписчик отстал, курсор перескакивает на самую старую доступную строку,
+     * и разница с исходным курсором - число пропущенных строк
+     */
+    public long read(long cursor, List<ConsoleLine> out, int max) {
+        long h = head;
+        long oldest = Math.max(0, h - ring.length);
+        long from = Math.max(cursor, oldest);
+        long to = Math.min(h, from + max);
+        int start = out.size();
+        for (long seq = from; seq < to; seq++) {
+            out.add(ring[(int) (seq % ring.length)]);
+        }
+        // Слоты, перезаписанные во время чтения, отбрасываем и начинаем с новой самой старой строки.
+        // claimed увеличивается до записи слота, поэтому учитывает и слот, который publish пишет прямо сейчас
+        VarHandle.loadLoadFence();
+        long overwrittenBefore = claimed - ring.length;
+        if (overwrittenBefore > from) {
+            out.subList(start, out.size()).clear();
+            return read(overwrittenBefore, out, max);
+        }
+        return to;
+    }
+
+    /**
+     * Ждёт появления строки с номером cursor или истечения таймаута.
+     * @return false, если буфер закрыт
+     */
+    public boolean await(long cursor, long timeoutMillis) throws InterruptedException {
+        synchronized (signal) {
+            if (head > cursor || closed) return !closed;
+            waiting++;
+            try {
+                signal.wait(timeoutMillis);
+            } finally {
+                waiting--;
+            }
+        }
+        return !closed;
+    }
+
+    /**
+     * Будит всех ожидающих подписчиков, чтобы они завершились.
+     */
+    public void close() {
+        closed = true;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.ejectfb.serverhandler.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Промежуточная очередь между потоком чтения процесса и UI.
+ * Строки складываются в ограниченную очередь и доставляются получателю
+ * одной пачкой не чаще одного раза за кадр (~60 Гц).
+ * При переполнении отбрасываются самые старые строки - свежий вывод важнее.
+ * @param <T> тип строки
+ */
+public class ConsolePipeline<T> {
+    public static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    private final BlockingQueue<T> queue;
+    private final Consumer<List<T>> sink;
+    private final Executor deliveryExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean deliveryScheduled = new AtomicBoolean(false);
+    private volatile long lastDeliveryNanos = 0;
+
+    private final LongAdder droppedLines = new LongAdder();
+    private final LongAdder coalescedLines = new LongAdder();
+    private final LongAdder deliveredLines = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param capacity         максимальное количество строк, ожидающих доставки
+     * @param sink             получатель пачек строк, вызывается в deliveryExecutor
+     * @param deliveryExecutor поток доставки (для UI - Platform::runLater)
+     * @param scheduler        планировщик для выдерживания интервала между кадрами
+     */
+    public ConsolePipeline(int capacity, Consumer<List<T>> sink,
+                           Executor deliveryExecutor, ScheduledExecutorService scheduler) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sink = sink;
+        this.deliveryExecutor = deliveryExecutor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Помещает строку в очередь. Никогда не блокирует вызывающий поток.
+     */
+    public void offer(T line) {
+        while (!queue.offer(line)) {
+            if (queue.poll() != null) droppedLines.increment();
+        }
+        scheduleDelivery();
+    }
+
+    private void scheduleDelivery() {
+        if (!deliveryScheduled.compareAndSet(false, true)) return;
+
+        long delay = lastDeliveryNanos + FRAME_NANOS - System.nanoTime();
+        if (delay <= 0) {
+            deliveryExecutor.execute(this::deliver);
+        } else {
+            scheduler.schedule(() -> deliveryExecutor.execute(this::deliver), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void deliver() {
+        // Сбрасываем флаг до выборки, чтобы строки, пришедшие во время доставки, запланировали следующий кадр
+        deliveryScheduled.set(false);
+        lastDeliveryNanos = System.nanoTime();
+
+        List<T> batch = new ArrayList<>(queue.size());
+        queue.drainTo(batch);
+        if (batch.isEmpty()) return;
+
+        batches.increment();
+        deliveredLines.add(batch.size());
+        coalescedLines.add(batch.size() - 1);
+        sink.accept(batch);
+    }
+
+    // Счётчики
+
+    public long getDroppedLines() {
+        return droppedLines.sum();
+    }
+
+    public long getCoalescedLines() {
+        return coalescedLines.sum();
+    }
+
+    public long getDeliveredLines() {
+        return deliveredLines.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+}
@@ -0,0 +1,401 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.BloomFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Поиск по архиву консоли.
+ * Для каждого закрытого сегмента при его закрытии строится фильтр Блума по словам и инвертированный
+ * индекс "слово -> блоки сегмента", они сохраняются рядом с сегментом. В памяти держится только
+ * фильтр: сегменты без нужных слов отбрасываются без чтения диска, для остальных списки блоков
+ * читаются из файла индекса, и в сегменте читаются только блоки, где эти слова встречаются.
+ * Сегменты обрабатываются параллельно в общем для всех серверов ForkJoinPool, совпадения передаются
+ * получателю по мере нахождения.
+ */
+public class ConsoleSearch implements AutoCloseable {
+    // Фильтры Блума сегментов в памяти занимают не больше стольких МБ, -Dsearch.indexCacheMb
+    private static final long INDEX_CACHE_BYTES = Long.getLong("search.indexCacheMb", 64) * 1024 * 1024;
+    // Не меньше 10 бит фильтра на слово: при оптимальном числе хешей ложных срабатываний меньше 1%
+    private static final int BLOOM_BITS_PER_TOKEN = 10;
+    private static final String WORDS_SUFFIX = ".words";
+
+    /** Параметры поиска. */
+    public static final class Query {
+        final List<String> tokens;
+        final Pattern regex;
+        final long from;
+        final long to;
+        final int limit;
+
+        /**
+         * @param tokens слова, которые все должны быть в строке (регистр не важен)
+         * @param regex  регулярное выражение для строки или null
+         * @param from   начало интервала времени
+         * @param to     конец интервала времени
+         * @param limit  максимальное количество совпадений
+         * @throws IllegalArgumentException если не задано ни одного слова от 2 символов и нет выражения
+         */
+        public Query(List<String> tokens, Pattern regex, long from, long to, int limit) {
+            this.tokens = new ArrayList<>();
+            for (String token : tokens) this.tokens.addAll(tokenize(token));
+            // Короткие слова не индексируются, и запрос из них одних совпал бы с каждой строкой
+            if (this.tokens.isEmpty() && regex == null) {
+                throw new IllegalArgumentException("Слова для поиска должны быть не короче 2 символов");
+            }
+            this.regex = regex;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        /**
+         * Разбирает строку поиска: "re:выражение" - регулярное выражение, иначе - слова.
+         */
+        public static Query parse(String text, long from, long to, int limit) {
+            String trimmed = text.trim();
+            if (trimmed.startsWith("re:")) {
+                return new Query(List.of(), Pattern.compile(trimmed.substring(3)), from, to, limit);
+            }
+            return new Query(tokenize(trimmed), null, from, to, limit);
+        }
+    }
+
+    private static final class Postings {
+        int[] blocks = new int[4];
+        int size = 0;
+
+        void add(int block) {
+            if (size > 0 && blocks[size - 1] == block) return;
+            if (size == blocks.length) blocks = Arrays.copyOf(blocks, size * 2);
+            blocks[size++] = block;
+        }
+    }
+
+    /** Часть индекса сегмента, которая держится в памяти. */
+    private static final class SegmentIndex {
+        final Path file;
+        final long[] blockOffsets;
+        final BloomFilter bloom;
+        // Смещение списков блоков в файле индекса
+        final long postingsStart;
+
+        SegmentIndex(Path file, long[] blockOffsets, BloomFilter bloom, long postingsStart) {
+            this.file = file;
+            this.blockOffsets = blockOffsets;
+            this.bloom = bloom;
+            this.postingsStart = postingsStart;
+        }
+    }
+
+    private final ConsoleArchive archive;
+    private final ForkJoinPool pool;
+    private volatile boolean closed;
+    // В порядке обращений: при переполнении вытесняются давно не нужные сегменты
+    private final Map<Path, SegmentIndex> indexCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long indexCacheBytes;
+
+    /**
+     * @param archive архив консоли
+     * @param pool    общий пул поиска, его закрывает владелец
+     */
+    public ConsoleSearch(ConsoleArchive archive, ForkJoinPool pool) {
+        this.archive = archive;
+        this.pool = pool;
+        archive.setSealListener(this::indexSealed);
+    }
+
+    /**
+     * Запускает поиск. onMatch вызывается из потоков пула, порядок совпадений между сегментами не гарантирован.
+     * @return future с количеством найденных строк
+     */
+    public CompletableFuture<Integer> search(Query query, Consumer<ConsoleArchive.Entry> onMatch) {
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("Поиск по архиву закрыт"));
+        return CompletableFuture.supplyAsync(() -> {
+            List<Path> segments;
+            try {
+                segments = archive.segments();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<Path> candidates = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                long start = ConsoleArchive.segmentStart(segments.get(i));
+                long nextStart = i + 1 < segments.size()
+                        ? ConsoleArchive.segmentStart(segments.get(i + 1))
+                        : Long.MAX_VALUE;
+                if (nextStart >= query.from && start <= query.to) candidates.add(segments.get(i));
+            }
+
+            AtomicInteger matches = new AtomicInteger();
+            AtomicBoolean done = new AtomicBoolean(false);
+            candidates.parallelStream().forEach(segment -> {
+                try {
+                    searchSegment(segment, query, onMatch, matches, done);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return Math.min(matches.get(), query.limit);
+        }, pool);
+    }
+
+    private void searchSegment(Path segment, Query query, Consumer<ConsoleArchive.Entry> onMatch,
+                               AtomicInteger matches, AtomicBoolean done) throws IOException {
+        if (done.get() || closed) return;
+
+        ConsoleArchive.RecordVisitor visitor = (offset, timestamp, line) -> {
+            if (done.get()) return false;
+            if (timestamp < query.from || timestamp > query.to || !matches(query, line)) return true;
+            if (matches.incrementAndGet() > query.limit) {
+                done.set(true);
+                return false;
+            }
+            onMatch.accept(new ConsoleArchive.Entry(timestamp, line));
+            return true;
+        };
+
+        if (query.tokens.isEmpty() || !ConsoleArchive.isSealed(segment)) {
+            archive.forEachRecord(segment, 0, visitor);
+            return;
+        }
+
+        SegmentIndex index = indexFor(segment);
+        TreeSet<String> wanted = new TreeSet<>(query.tokens);
+        for (String token : wanted) {
+            if (!index.bloom.mightContain(token)) return;
+        }
+        Map<String, int[]> postings = readPostings(index, wanted);
+        int[] blocks = null;
+        for (String token : wanted) {
+            int[] tokenBlocks = postings.get(token);
+            if (tokenBlocks == null) return;
+            blocks = blocks == null ? tokenBlocks : intersect(blocks, tokenBlocks);
+            if (blocks.length == 0) return;
+        }
+
+        // Читаем сегмент с первого подходящего блока и проверяем только строки из подходящих блоков
+        long[] offsets = index.blockOffsets;
+        int[] candidateBlocks = blocks;
+        int[] cursor = {0};
+        archive.forEachRecord(segment, offsets[candidateBlocks[0]], (offset, timestamp, line) -> {
+            while (cursor[0] < candidateBlocks.length && blockEnd(offsets, candidateBlocks[cursor[0]]) <= offset) {
+                cursor[0]++;
+            }
+            if (cursor[0] == candidateBlocks.length) return false;
+            if (offset < offsets[candidateBlocks[cursor[0]]]) return true;
+            return visitor.visit(offset, timestamp, line);
+        });
+    }
+
+    // Индекс строится при закрытии сегмента, чтобы первый поиск не читал весь архив
+    private void indexSealed(Path segment) {
+        try {
+            writeIndex(segment, wordsPath(segment));
+        } catch (IOException e) {
+            System.err.println("Ошибка индексации сегмента архива " + segment + ": " + e.getMessage());
+        }
+    }
+
+    private SegmentIndex indexFor(Path segment) throws IOException {
+        synchronized (indexCache) {
+            SegmentIndex cached = indexCache.get(segment);
+            if (cached != null) return cached;
+        }
+
+        // Сегменты, закрытые при открытии архива или до появления индексов, индексируются при первом поиске
+        Path file = wordsPath(segment);
+        if (!Files.exists(file)) writeIndex(segment, file);
+        SegmentIndex index = readIndex(file);
+
+        synchronized (indexCache) {
+            SegmentIndex previous = indexCache.put(segment, index);
+            if (previous != null) indexCacheBytes -= previous.bloom.sizeInBytes();
+            indexCacheBytes += index.bloom.sizeInBytes();
+            Iterator<SegmentIndex> eldest = indexCache.values().iterator();
+            while (indexCacheBytes > INDEX_CACHE_BYTES && indexCache.size() > 1) {
+                indexCacheBytes -= eldest.next().bloom.sizeInBytes();
+                eldest.remove();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Файл индекса: [число блоков:4][смещения блоков:8*n][фильтр Блума]
+     * [число слов:4] и для каждого слова по возрастанию: [длина:4][UTF-8 байты][число блоков:4][блоки:4*n].
+     */
+    private void writeIndex(Path segment, Path file) throws IOException {
+        long[] blockOffsets = archive.indexOffsets(segment);
+        Map<String, Postings> building = new TreeMap<>();
+        int[] block = {0};
+        archive.forEachRecord(segment, 0, (offset, timestamp, line) -> {
+            while (block[0] + 1 < blockOffsets.length && blockOffsets[block[0] + 1] <= offset) {
+                block[0]++;
+            }
+            for (String token : tokenize(line)) {
+                building.computeIfAbsent(token, t -> new Postings()).add(block[0]);
+            }
+            return true;
+        });
+        int log2Bits = bloomBits(building.size());
+        BloomFilter bloom = new BloomFilter(log2Bits, bloomHashes(log2Bits, building.size()));
+        building.keySet().forEach(bloom::add);
+
+        // Читатели видят либо старое состояние, либо полностью записанный индекс
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+                out.writeInt(blockOffsets.length);
+                for (long offset : blockOffsets) out.writeLong(offset);
+                bloom.writeTo(out);
+                out.writeInt(building.size());
+                for (Map.Entry<String, Postings> entry : building.entrySet()) {
+                    byte[] token = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(token.length);
+                    out.write(token);
+                    Postings postings = entry.getValue();
+                    out.writeInt(postings.size);
+                    for (int i = 0; i < postings.size; i++) out.writeInt(postings.blocks[i]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static SegmentIndex readIndex(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            long[] blockOffsets = new long[in.readInt()];
+            for (int i = 0; i < blockOffsets.length; i++) blockOffsets[i] = in.readLong();
+            BloomFilter bloom = BloomFilter.readFrom(in);
+            long postingsStart = 4 + 8L * blockOffsets.length + bloom.sizeInBytes();
+            return new SegmentIndex(file, blockOffsets, bloom, postingsStart);
+        }
+    }
+
+    // Списки блоков нужных слов; слова в файле упорядочены, поэтому чтение заканчивается после последнего нужного
+    private static Map<String, int[]> readPostings(SegmentIndex index, TreeSet<String> wanted) throws IOException {
+        Map<String, int[]> found = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(index.file), 64 * 1024))) {
+            in.skipNBytes(index.postingsStart);
+            int count = in.readInt();
+            for (int i = 0; i < count && found.size() < wanted.size(); i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String token = new String(bytes, StandardCharsets.UTF_8);
+                int size = in.readInt();
+                if (wanted.contains(token)) {
+                    int[] blocks = new int[size];
+                    for (int j = 0; j < size; j++) blocks[j] = in.readInt();
+                    found.put(token, blocks);
+                } else if (token.compareTo(wanted.last()) > 0) {
+                    break;
+                } else {
+                    in.skipNBytes(4L * size);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Логарифм размера фильтра: степень двойки не меньше BLOOM_BITS_PER_TOKEN бит на слово.
+    // В сегменте 64 МБ сотни тысяч разных слов (координаты, UUID, адреса), поэтому размер не ограничен
+    // сверху ничем, кроме предела массива: фильтр переполненного сегмента пропускал бы почти всё
+    private static int bloomBits(int tokens) {
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, (long) tokens * BLOOM_BITS_PER_TOKEN - 1));
+        return Math.max(10, Math.min(30, bits));
+    }
+
+    // Оптимальное число хешей - ln 2 на бит фильтра на слово
+    private static int bloomHashes(int log2Bits, int tokens) {
+        double bitsPerToken = (double) (1L << log2Bits) / Math.max(1, tokens);
+        return (int) Math.max(1, Math.min(16, Math.round(bitsPerToken * Math.log(2))));
+    }
+
+    private static Path wordsPath(Path segment) {
+        return ConsoleArchive.companionPath(segment, WORDS_SUFFIX);
+    }
+
+    private static boolean matches(Query query, String line) {
+        // Слова сравниваются целиком - так же, как их видит индекс закрытых сегментов
+        if (!query.tokens.isEmpty() && !tokenize(line).containsAll(query.tokens)) return false;
+        return query.regex == null || query.regex.matcher(line).find();
+    }
+
+    private static long blockEnd(long[] offsets, int block) {
+        return block + 1 < offsets.length ? offsets[block + 1] : Long.MAX_VALUE;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Слова строки: буквы, цифры и '_', в нижнем регистре, длиной от 2 символов.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean wordChar = i < line.length()
+                    && (Character.isLetterOrDigit(line.charAt(i)) || line.charAt(i) == '_');
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= 2) tokens.add(line.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Прекращает приём поисков; пул общий и остаётся работать.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        archive.setSealListener(null);
+    }
+}
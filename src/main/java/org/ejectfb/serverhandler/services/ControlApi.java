@@ -0,0 +1,334 @@
+package org.ejectfb.serverhandler.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static org.ejectfb.serverhandler.utils.StringUtils.escapeJson;
+
+/**
+ * Локальный HTTP API управления на встроенном {@link HttpServer} JDK.
+ * <pre>
+ *   GET  /api/servers                         список серверов и их состояние
+ *   POST /api/servers/{имя}/start|stop|restart
+ *   POST /api/servers/{имя}/backup            резервная копия миров в фоне
+ *   POST /api/servers/{имя}/command           тело запроса - команда консоли
+ *   GET  /api/servers/{имя}/stats             последняя статистика
+ *   GET  /api/servers/{имя}/console?tail=N    поток строк консоли (Server-Sent Events)
+ * </pre>
+ * Строки консоли раздаются подписчикам из одного общего {@link ConsoleBroadcast} на сервер.
+ * У каждого подписчика своя задача отправки, поэтому медленный клиент задерживает только себя.
+ * <p>
+ * Каждый запрос передаёт токен в заголовке "Authorization: Bearer ...". Токен не принимается
+ * в параметрах адреса, чтобы не оседать в логах и истории. Запросы из браузера отклоняются:
+ * любая открытая страница может отправить POST на локальный адрес, а через DNS rebinding ещё и читать ответы.
+ * Поэтому запрос с заголовком Origin отклоняется. Host должен быть localhost или числовым адресом:
+ * loopback-адресом или тем, на котором слушает API.
+ */
+public class ControlApi implements ServerInstance.Listener, AutoCloseable {
+    private static final int BROADCAST_CAPACITY = Integer.getInteger("api.bufferLines", 4096);
+    private static final int SEND_BATCH = 1024;
+    private static final long KEEPALIVE_MILLIS = 15_000;
+
+    private final HandlerCore core;
+    private final String token;
+    private final HttpServer server;
+    private final Map<ServerInstance, ConsoleBroadcast> broadcasts = new ConcurrentHashMap<>();
+
+    /**
+     * @param core     ядро обработчика
+     * @param address  адрес прослушивания (по умолчанию стоит использовать только loopback)
+     * @param token    токен доступа
+     * @param executor пул, в котором обрабатываются запросы и живут подписчики консоли
+     * @throws IllegalArgumentException если токен не задан
+     */
+    public ControlApi(HandlerCore core, InetSocketAddress address, String token, Executor executor) throws IOException {
+        if (token == null || token.isBlank()) throw new IllegalArgumentException("не задан токен API управления");
+        this.core = core;
+        this.token = token;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/api/servers", this::handle);
+        server.setExecutor(executor);
+        core.addListener(this);
+        server.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!trustedOrigin(exchange)) {
+                respond(exchange, 403, "{\"error\":\"forbidden\"}");
+                return;
+            }
+            if (!authorized(exchange)) {
+                respond(exchange, 401, "{\"error\":\"unauthorized\"}");
+                return;
+            }
+
+            // /api/servers[/{имя}[/{действие}]]
+            String[] parts = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            String method = exchange.getRequestMethod();
+            if (parts.length == 3) {
+                if (!method.equals("GET")) {
+                    respond(exchange, 405, "{\"error\":\"method not allowed\"}");
+                } else {
+                    respond(exchange, 200, listJson());
+                }
+                return;
+            }
+
+            ServerInstance instance = parts.length == 5 ? core.getRegistry().get(parts[3]) : null;
+            if (instance == null) {
+                respond(exchange, 404, "{\"error\":\"not found\"}");
+                return;
+            }
+
+            String action = parts[4];
+            boolean get = method.equals("GET");
+            switch (action) {
+                case "stats" -> {
+                    if (get) respond(exchange, 200, statsJson(instance));
+                    else respond(exchange, 405, "{\"error\":\"method not allowed\"}");
+                }
+                case "console" -> {
+                    if (get) streamConsole(exchange, instance);
+                    else respond(exchange, 405, "{\"error\":\"method not allowed\"}");
+                }
+                case "start", "stop", "restart", "backup", "command" -> {
+                    if (!method.equals("POST")) {
+                        respond(exchange, 405, "{\"error\":\"method not allowed\"}");
+                        return;
+                    }
+                    switch (action) {
+                        case "start" -> instance.start();
+                        case "stop" -> instance.stop();
+                        case "restart" -> instance.restart();
+                        case "backup" -> {
+                            if (instance.getWorldBackup().isRunning()) {
+                                respond(exchange, 409, "{\"error\":\"backup is already running\"}");
+                                return;
+                            }
+                            instance.backup();
+                        }
+                        default -> {
+                            String command = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+                            if (command.isEmpty() || command.contains("\n")) {
+                                respond(exchange, 400, "{\"error\":\"command must be a single non-empty line\"}");
+                                return;
+                            }
+                            if (!instance.isRunning()) {
+                                respond(exchange, 409, "{\"error\":\"server is not running\"}");
+                                return;
+                            }
+                            instance.sendCommand(command);
+                        }
+                    }
+                    respond(exchange, 202, "{\"state\":\"" + instance.getState() + "\"}");
+                }
+                default -> respond(exchange, 404, "{\"error\":\"not found\"}");
+            }
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return false;
+        // Сравнение за постоянное время не выдаёт токен по времени ответа
+        return MessageDigest.isEqual(header.substring(7).getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Запросы страниц из браузера: у них есть Origin, а при DNS rebinding - чужое имя в Host
+    private boolean trustedOrigin(HttpExchange exchange) {
+        if (exchange.getRequestHeaders().containsKey("Origin")) return false;
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null) return false;
+        host = host.trim().toLowerCase(Locale.ROOT);
+        if (host.startsWith("[")) {
+            int end = host.indexOf(']');
+            if (end < 0) return false;
+            host = host.substring(1, end);
+        } else if (host.indexOf(':') >= 0) {
+            host = host.substring(0, host.indexOf(':'));
+        }
+        if (host.equals("localhost")) return true;
+        if (!isIpLiteral(host)) return false;
+        try {
+            // Для числового адреса getByName не обращается к DNS
+            InetAddress address = InetAddress.getByName(host);
+            InetAddress bound = server.getAddress().getAddress();
+            return address.isLoopbackAddress() || bound.isAnyLocalAddress() || address.equals(bound);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isIpLiteral(String host) {
+        if (host.isEmpty()) return false;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c == '.' || c == ':')) return false;
+        }
+        // Имя из одних шестнадцатеричных букв (например "cafe") - не адрес
+        return host.indexOf(':') >= 0 || host.chars().allMatch(c -> c == '.' || c >= '0' && c <= '9');
+    }
+
+    private void streamConsole(HttpExchange exchange, ServerInstance instance) throws IOException {
+        ConsoleBroadcast broadcast = broadcastFor(instance);
+        String tail = queryParam(exchange.getRequestURI(), "tail");
+        long cursor;
+        try {
+            cursor = tail == null ? broadcast.head() : broadcast.tailCursor(Integer.parseInt(tail));
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "{\"error\":\"tail must be a number\"}");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        // Поток подписчика блокируется только на своём сокете - чтение процесса и другие клиенты не ждут
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        List<ConsoleLine> batch = new ArrayList<>(SEND_BATCH);
+        try {
+            while (true) {
+                batch.clear();
+                long next = broadcast.read(cursor, batch, SEND_BATCH);
+                long skipped = next - cursor - batch.size();
+                cursor = next;
+                if (skipped > 0) {
+                    writer.write("event: skipped\ndata: " + skipped + "\n\n");
+                }
+                for (ConsoleLine line : batch) {
+                    writer.write("data: ");
+                    writer.write(line.toString());
+                    writer.write("\n\n");
+                }
+                if (!batch.isEmpty() || skipped > 0) {
+                    writer.flush();
+                    continue;
+                }
+                if (!broadcast.await(cursor, KEEPALIVE_MILLIS)) break;
+                if (broadcast.head() == cursor) {
+                    writer.write(": keepalive\n\n");
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Клиент отключился
+        }
+    }
+
+    private ConsoleBroadcast broadcastFor(ServerInstance instance) {
+        return broadcasts.computeIfAbsent(instance, i -> new ConsoleBroadcast(BROADCAST_CAPACITY));
+    }
+
+    private String listJson() {
+        StringBuilder sb = new StringBuilder("[");
+        for (ServerInstance instance : core.getRegistry().list()) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append("{\"name\":\"").append(escapeJson(instance.getName()))
+                    .append("\",\"state\":\"").append(instance.getState())
+                    .append("\",\"running\":").append(instance.isRunning())
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String statsJson(ServerInstance instance) {
+        StringBuilder sb = new StringBuilder("{\"name\":\"").append(escapeJson(instance.getName()))
+                .append("\",\"state\":\"").append(instance.getState())
+                .append("\",\"running\":").append(instance.isRunning());
+        PlayerSessionTracker players = instance.getPlayerSessions();
+        sb.append(",\"players\":").append(players.getOnlineCount())
+                .append(",\"playersPeak\":").append(players.getPeak())
+                .append(",\"online\":[");
+        List<String> online = players.getOnlinePlayers();
+        for (int i = 0; i < online.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(escapeJson(online.get(i))).append('"');
+        }
+        sb.append(']');
+        ServerDataService stats = instance.getStatsData();
+        if (stats != null) {
+            sb.append(",\"tps\":\"").append(escapeJson(stats.getTps()))
+                    .append("\",\"memory\":\"").append(escapeJson(stats.getMemory()))
+                    .append("\",\"uptime\":\"").append(escapeJson(stats.calculateUptime())).append('"');
+        }
+        JvmMetricsCollector jvm = instance.getJvmMetrics();
+        JvmMetricsCollector.Snapshot snapshot = jvm != null ? jvm.getLatest() : null;
+        if (snapshot != null) {
+            sb.append(",\"heapUsedMb\":").append(snapshot.heapUsedMb)
+                    .append(",\"heapMaxMb\":").append(snapshot.heapMaxMb)
+                    .append(",\"threads\":").append(snapshot.threads)
+                    .append(",\"gcTimeMillis\":").append(snapshot.gcTimeMillis);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String queryParam(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // События серверов
+
+    @Override
+    public void onLine(ServerInstance instance, ConsoleLine line) {
+        broadcastFor(instance).publish(line);
+    }
+
+    @Override
+    public void onStateChanged(ServerInstance instance, ServerSupervisor.State state) {
+    }
+
+    @Override
+    public void onNotification(ServerInstance instance, String key, String text, NotificationDigest.Priority priority) {
+    }
+
+    @Override
+    public void close() {
+        core.removeListener(this);
+        broadcasts.values().forEach(ConsoleBroadcast::close);
+        server.stop(0);
+    }
+}
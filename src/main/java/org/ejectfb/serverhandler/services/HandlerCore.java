@@ -0,0 +1,338 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Ядро обработчика без UI: реестр серверов, уведомления в Telegram и общие настройки.
+ * Не загружает JavaFX, поэтому запускается и без дисплея. Интерфейсы (окно, консоль, API)
+ * подключаются к ядру как слушатели и получают строки и события всех серверов.
+ */
+public class HandlerCore implements ServerInstance.Listener, AutoCloseable {
+    // Все строки консоли сохраняются на диск, -Dconsole.archiveDir задаёт каталог (у каждого сервера свой подкаталог)
+    private static final Path ARCHIVE_DIR = Path.of(System.getProperty("console.archiveDir", "logs/console-archive"));
+    // Каталог статистики запусков для подбора параметров JVM
+    private static final Path LAUNCH_STATS_DIR = Path.of(System.getProperty("launch.statsDir", "."));
+    // Уведомления за окно объединяются в одну сводку, -Dtelegram.digestWindow задаёт окно в секундах
+    private static final Duration DIGEST_WINDOW = Duration.ofSeconds(Integer.getInteger("telegram.digestWindow", 60));
+    // HTTP API управления включается заданием -Dapi.port, по умолчанию слушает только локальный адрес
+    private static final Integer API_PORT = Integer.getInteger("api.port");
+    private static final String API_BIND = System.getProperty("api.bind", "127.0.0.1");
+    // Правила оповещений по строкам консоли, -Dalerts.file задаёт файл
+    private static final Path ALERTS_FILE = Path.of(System.getProperty("alerts.file", "alerts.properties"));
+    // Команды и действия по расписанию cron, -Dschedule.file задаёт файл
+    private static final Path SCHEDULE_FILE = Path.of(System.getProperty("schedule.file", "schedule.properties"));
+    // Каталог файлов настроек и профиль, выбранный при запуске (-Dsettings.profile)
+    private static final Path SETTINGS_DIR = Path.of(System.getProperty("settings.dir", "."));
+    // Сколько при закрытии ждать отправки последних сообщений в Telegram
+    private static final Duration TELEGRAM_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ServerRegistry registry;
+    private final List<ServerInstance.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final NotificationDigest notificationDigest;
+    private final SettingsStore settingsStore;
+    private volatile TelegramBotService telegramBot;
+    private volatile int pollIntervalHours = 3;
+    private volatile AlertEngine alertEngine;
+    private CommandScheduler commandScheduler;
+    private ControlApi controlApi;
+
+    public HandlerCore() {
+        this(ARCHIVE_DIR, LAUNCH_STATS_DIR, new SettingsStore(SETTINGS_DIR, System.getProperty("settings.profile")));
+    }
+
+    /**
+     * @param archiveRoot    каталог архивов консоли
+     * @param launchStatsDir каталог статистики запусков
+     * @param settingsStore  хранилище настроек
+     */
+    public HandlerCore(Path archiveRoot, Path launchStatsDir, SettingsStore settingsStore) {
+        this.settingsStore = settingsStore;
+        this.registry = new ServerRegistry(archiveRoot, launchStatsDir, this);
+        this.notificationDigest = new NotificationDigest(this::sendToTelegram, registry.getScheduler(), DIGEST_WINDOW);
+        reloadAlerts();
+        reloadSchedule();
+    }
+
+    public void addListener(ServerInstance.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ServerInstance.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Создаёт сервер с текущими общими настройками.
+     * @throws IllegalArgumentException если имя недопустимо или занято
+     */
+    public ServerInstance createInstance(String name) {
+        ServerInstance instance = registry.create(name);
+        instance.setPollIntervalHours(pollIntervalHours);
+        instance.setAlertEngine(alertEngine);
+        return instance;
+    }
+
+    // Настройки
+
+    /**
+     * Применяет настройки: создаёт недостающие серверы, обновляет их параметры запуска,
+     * интервал статистики и Telegram. Запущенные серверы не перезапускаются - новая команда
+     * запуска действует со следующего старта. Серверы, которых нет в настройках, не удаляются.
+     */
+    public synchronized void applySettings(Settings settings) {
+        for (Settings.Server server : settings.getServers()) {
+            ServerInstance instance = registry.get(server.getName());
+            if (instance == null) instance = createInstance(server.getName());
+            instance.setCommand(server.getCommand());
+            instance.setNiceLevel(server.getNiceLevel());
+            instance.setCpuAffinity(server.getCpuAffinity());
+        }
+        setPollIntervalHours(settings.getPollIntervalHours());
+        if (settings.hasTelegram()) configureTelegram(settings.getTelegramToken(), settings.getTelegramChatId());
+        else disableTelegram();
+    }
+
+    /**
+     * Текущие настройки ядра и всех серверов.
+     */
+    public synchronized Settings snapshotSettings() {
+        Settings settings = new Settings();
+        settings.setPollIntervalHours(pollIntervalHours);
+        TelegramBotService bot = telegramBot;
+        if (bot != null) {
+            settings.setTelegramToken(bot.getBotToken());
+            settings.setTelegramChatId(bot.getChatId());
+        }
+        for (ServerInstance instance : registry.list()) {
+            Settings.Server server = settings.server(instance.getName());
+            server.setCommand(instance.getCommand());
+            server.setNiceLevel(instance.getNiceLevel());
+            server.setCpuAffinity(instance.getCpuAffinity());
+        }
+        return settings;
+    }
+
+    /**
+     * Следит за файлами настроек; изменённые вручную настройки передаются получателю
+     * (обычно он вызывает {@link #applySettings}).
+     */
+    public void watchSettings(Consumer<Settings> onChange) throws IOException {
+        settingsStore.watch(registry.getIoExecutor(), registry.getScheduler(), onChange);
+    }
+
+    public SettingsStore getSettingsStore() {
+        return settingsStore;
+    }
+
+    // Оповещения
+
+    /**
+     * Перечитывает правила оповещений из файла и применяет их ко всем серверам.
+     * При ошибке в файле остаются прежние правила.
+     * @return false, если файл прочитать не удалось
+     */
+    public boolean reloadAlerts() {
+        try {
+            setAlertRules(AlertEngine.loadRules(ALERTS_FILE));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка загрузки правил оповещений из " + ALERTS_FILE + ": " + e.getMessage());
+            if (alertEngine == null) setAlertRules(AlertRule.defaults());
+            return false;
+        }
+    }
+
+    /**
+     * Компилирует правила в один автомат и применяет ко всем серверам.
+     */
+    public synchronized void setAlertRules(List<AlertRule> rules) {
+        AlertEngine engine = new AlertEngine(rules, this, registry.getScheduler());
+        alertEngine = engine;
+        for (ServerInstance instance : registry.list()) {
+            instance.setAlertEngine(engine);
+        }
+    }
+
+    public AlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    // Расписание
+
+    /**
+     * Перечитывает расписание из файла и перезапускает его. При ошибке в файле остаётся прежнее расписание.
+     * @return false, если файл прочитать не удалось
+     */
+    public boolean reloadSchedule() {
+        try {
+            setSchedule(CommandScheduler.load(SCHEDULE_FILE));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ошибка загрузки расписания из " + SCHEDULE_FILE + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized void setSchedule(List<ScheduledCommand> schedule) {
+        if (commandScheduler != null) commandScheduler.close();
+        commandScheduler = new CommandScheduler(schedule, registry, registry.getScheduler());
+        commandScheduler.start();
+    }
+
+    public synchronized CommandScheduler getCommandScheduler() {
+        return commandScheduler;
+    }
+
+    /**
+     * Корректно останавливает все серверы.
+     * @return future, завершающийся после выхода всех процессов
+     */
+    public CompletableFuture<Void> stopAll() {
+        return CompletableFuture.allOf(registry.list().stream()
+                .map(ServerInstance::stop)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Останавливает все серверы, ожидая не дольше timeout, и освобождает ресурсы ядра.
+     */
+    public void shutdown(Duration timeout) {
+        try {
+            stopAll().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Не все серверы остановились корректно: " + e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Запускает HTTP API управления, если задан -Dapi.port. Без -Dapi.token API не работает открытым:
+     * создаётся случайный токен и печатается при запуске.
+     * @return адрес API или null, если API выключен
+     */
+    public synchronized InetSocketAddress startControlApi() throws IOException {
+        if (API_PORT == null || controlApi != null) return controlApi == null ? null : controlApi.getAddress();
+        String token = System.getProperty("api.token");
+        if (token == null || token.isBlank()) {
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+            System.out.println("API управления: -Dapi.token не задан, токен этого запуска: " + token);
+        }
+        controlApi = new ControlApi(this, new InetSocketAddress(API_BIND, API_PORT), token, registry.getIoExecutor());
+        return controlApi.getAddress();
+    }
+
+    // Telegram
+
+    /**
+     * Подключает бота. Бот с теми же настройками переиспользуется, чтобы не плодить очереди и потоки отправки.
+     * @return текущий бот
+     */
+    public synchronized TelegramBotService configureTelegram(String token, String chatId) {
+        TelegramBotService current = telegramBot;
+        if (current != null && current.getBotToken().equals(token) && current.getChatId().equals(chatId)) {
+            return current;
+        }
+        TelegramBotService bot = new TelegramBotService(token, chatId, registry.getIoExecutor());
+        telegramBot = bot;
+        if (current != null) current.close();
+        return bot;
+    }
+
+    public synchronized void disableTelegram() {
+        TelegramBotService previous = telegramBot;
+        telegramBot = null;
+        if (previous != null) previous.close();
+    }
+
+    public TelegramBotService getTelegramBot() {
+        return telegramBot;
+    }
+
+    private void sendToTelegram(String message) {
+        TelegramBotService bot = telegramBot;
+        if (bot != null) bot.sendMessage(message);
+    }
+
+    // События серверов передаются всем подключённым интерфейсам
+
+    @Override
+    public void onLine(ServerInstance instance, ConsoleLine line) {
+        for (ServerInstance.Listener listener : listeners) {
+            listener.onLine(instance, line);
+        }
+    }
+
+    @Override
+    public void onStateChanged(ServerInstance instance, ServerSupervisor.State state) {
+        for (ServerInstance.Listener listener : listeners) {
+            listener.onStateChanged(instance, state);
+        }
+    }
+
+    @Override
+    public void onNotification(ServerInstance instance, String key, String text, NotificationDigest.Priority priority) {
+        // При нескольких серверах в уведомлении указывается, к какому оно относится
+        String prefix = registry.size() > 1 ? "[" + instance.getName() + "] " : "";
+        notificationDigest.notify(instance.getName() + ":" + key, prefix + text, priority);
+        for (ServerInstance.Listener listener : listeners) {
+            listener.onNotification(instance, key, text, priority);
+        }
+    }
+
+    //Getters and Setters
+
+    public ServerRegistry getRegistry() {
+        return registry;
+    }
+
+    public int getPollIntervalHours() {
+        return pollIntervalHours;
+    }
+
+    public void setPollIntervalHours(int pollIntervalHours) {
+        this.pollIntervalHours = pollIntervalHours;
+        for (ServerInstance instance : registry.list()) {
+            instance.setPollIntervalHours(pollIntervalHours);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (controlApi != null) controlApi.close();
+            controlApi = null;
+            if (commandScheduler != null) commandScheduler.close();
+        }
+        settingsStore.close();
+        // Сначала серверы, затем последняя сводка и отправка очереди Telegram, и только потом общие пулы:
+        // иначе сообщения об остановке теряются вместе с задачей отправки
+        registry.closeInstances();
+        notificationDigest.flush();
+        TelegramBotService bot;
+        synchronized (this) {
+            bot = telegramBot;
+            telegramBot = null;
+        }
+        if (bot != null) bot.close(TELEGRAM_DRAIN_TIMEOUT);
+        registry.close();
+    }
+}
@@ -0,0 +1,283 @@
+package org.ejectfb.serverhandler.services;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.OperatingSystemMXBean;
+import com.sun.tools.attach.VirtualMachine;
+
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Снимает метрики JVM сервера напрямую через Attach API и локальный JMX-коннектор:
+ * heap, время и паузы GC, количество потоков и загрузку CPU процесса. Паузы берутся из уведомлений
+ * о каждой сборке, а не из прироста суммарного времени GC: тот складывает несколько пауз и время
+ * конкурентных циклов (ZGC, Shenandoah).
+ * Не зависит от плагинов и не отправляет команды в консоль.
+ */
+public class JvmMetricsCollector implements AutoCloseable {
+    private static final int MAX_ATTACH_ATTEMPTS = 12;
+    private static final long ATTACH_RETRY_MILLIS = 5000;
+
+    /** Снимок метрик JVM, публикуется целиком. */
+    public static final class Snapshot {
+        public final long heapUsedMb;
+        public final long heapMaxMb;
+        public final long heapAfterGcMb;
+        public final long gcCount;
+        public final long gcTimeMillis;
+        public final long gcTimeDeltaMillis;
+        public final int threads;
+        public final double processCpuLoad;
+        public final long timestamp;
+
+        Snapshot(long heapUsedMb, long heapMaxMb, long heapAfterGcMb, long gcCount, long gcTimeMillis,
+                 long gcTimeDeltaMillis, int threads, double processCpuLoad, long timestamp) {
+            this.heapUsedMb = heapUsedMb;
+            this.heapMaxMb = heapMaxMb;
+            this.heapAfterGcMb = heapAfterGcMb;
+            this.gcCount = gcCount;
+            this.gcTimeMillis = gcTimeMillis;
+            this.gcTimeDeltaMillis = gcTimeDeltaMillis;
+            this.threads = threads;
+            this.processCpuLoad = processCpuLoad;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /** Итоги одного запуска сервера - основа для подбора параметров следующего. */
+    public static final class RunStats {
+        public long heapMaxMb;
+        public long peakHeapAfterGcMb;
+        // Самая долгая пауза одной сборки (stop-the-world)
+        public long maxGcPauseMillis;
+        public long totalGcMillis;
+        public long durationMillis;
+
+        /**
+         * Доля времени, проведённого в GC, в процентах.
+         */
+        public double gcOverheadPercent() {
+            return durationMillis == 0 ? 0 : totalGcMillis * 100.0 / durationMillis;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final MetricsStore metrics;
+    private final Consumer<String> log;
+    private final long sampleMillis;
+
+    private volatile Snapshot latest;
+    private Snapshot first;
+    private final RunStats runStats = new RunStats();
+    private volatile long pid = -1;
+    private JMXConnector connector;
+    private volatile MBeanServerConnection connection;
+    private MemoryMXBean memory;
+    private ThreadMXBean threads;
+    private OperatingSystemMXBean os;
+    private List<GarbageCollectorMXBean> collectors;
+    private List<MemoryPoolMXBean> heapPools;
+    private ScheduledFuture<?> task;
+    private int attachAttempts = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * @param scheduler    планировщик попыток подключения и опроса
+     * @param metrics      хранилище истории метрик
+     * @param log          получает сообщения о подключении
+     * @param sampleMillis интервал опроса
+     */
+    public JvmMetricsCollector(ScheduledExecutorService scheduler, MetricsStore metrics,
+                               Consumer<String> log, long sampleMillis) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.log = log;
+        this.sampleMillis = sampleMillis;
+    }
+
+    /**
+     * Начинает подключение к JVM сервера. Сервер может быть запущен через оболочку,
+     * поэтому ищется java-процесс среди самого процесса и его потомков.
+     */
+    public synchronized void start(Process process) {
+        task = scheduler.schedule(() -> tryAttach(process.toHandle()), ATTACH_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public Snapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * PID java-процесса сервера или -1, если он ещё не найден.
+     */
+    public long getPid() {
+        return pid;
+    }
+
+    private synchronized void tryAttach(ProcessHandle root) {
+        if (closed || !root.isAlive()) return;
+
+        attachAttempts++;
+        try {
+            ProcessHandle target = findJavaProcess(root).orElse(root);
+            VirtualMachine vm = VirtualMachine.attach(String.valueOf(target.pid()));
+            String address;
+            try {
+                address = vm.startLocalManagementAgent();
+            } finally {
+                vm.detach();
+            }
+
+            connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            this.connection = connection;
+            memory = ManagementFactory.newPlatformMXBeanProxy(connection,
+                    ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+            threads = ManagementFactory.newPlatformMXBeanProxy(connection,
+                    ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+            os = ManagementFactory.newPlatformMXBeanProxy(connection,
+                    ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME, OperatingSystemMXBean.class);
+            collectors = ManagementFactory.getPlatformMXBeans(connection, GarbageCollectorMXBean.class);
+            heapPools = ManagementFactory.getPlatformMXBeans(connection, MemoryPoolMXBean.class).stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .toList();
+            for (GarbageCollectorMXBean gc : collectors) {
+                connection.addNotificationListener(gc.getObjectName(), (notification, handback) ->
+                        onCollection(notification), null, null);
+            }
+            pid = target.pid();
+
+            log.accept("Подключение к JVM сервера (PID " + target.pid() + ") для сбора метрик установлено");
+            task = scheduler.scheduleAtFixedRate(this::sample, 0, sampleMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception | NoClassDefFoundError e) {
+            closeConnector();
+            if (attachAttempts < MAX_ATTACH_ATTEMPTS) {
+                task = scheduler.schedule(() -> tryAttach(root), ATTACH_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } else {
+                log.accept("Не удалось подключиться к JVM сервера для сбора метрик: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Optional<ProcessHandle> findJavaProcess(ProcessHandle root) {
+        if (isJava(root)) return Optional.of(root);
+        return root.descendants().filter(JvmMetricsCollector::isJava).findFirst();
+    }
+
+    private static boolean isJava(ProcessHandle handle) {
+        return handle.info().command()
+                .map(command -> command.endsWith("java") || command.endsWith("java.exe"))
+                .orElse(false);
+    }
+
+    private synchronized void sample() {
+        if (closed || connector == null) return;
+
+        try {
+            MemoryUsage heap = memory.getHeapMemoryUsage();
+            long gcCount = 0;
+            long gcTime = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcTime += Math.max(0, gc.getCollectionTime());
+            }
+            // Занятость пулов сразу после последней сборки - реальный живой набор данных
+            long afterGc = 0;
+            for (MemoryPoolMXBean pool : heapPools) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) afterGc += usage.getUsed();
+            }
+            Snapshot previous = latest;
+            long now = System.currentTimeMillis();
+            Snapshot snapshot = new Snapshot(
+                    heap.getUsed() / (1024 * 1024),
+                    heap.getMax() / (1024 * 1024),
+                    afterGc / (1024 * 1024),
+                    gcCount,
+                    gcTime,
+                    previous == null ? 0 : gcTime - previous.gcTimeMillis,
+                    threads.getThreadCount(),
+                    os.getProcessCpuLoad(),
+                    now);
+            latest = snapshot;
+            if (first == null) first = snapshot;
+            runStats.heapMaxMb = snapshot.heapMaxMb;
+            runStats.peakHeapAfterGcMb = Math.max(runStats.peakHeapAfterGcMb, snapshot.heapAfterGcMb);
+            runStats.totalGcMillis = snapshot.gcTimeMillis - first.gcTimeMillis;
+            runStats.durationMillis = snapshot.timestamp - first.timestamp;
+
+            metrics.record(MetricsStore.Metric.HEAP_USED_MB, now, snapshot.heapUsedMb);
+            metrics.record(MetricsStore.Metric.GC_TIME_MS, now, snapshot.gcTimeDeltaMillis);
+            metrics.record(MetricsStore.Metric.THREADS, now, snapshot.threads);
+            if (snapshot.processCpuLoad >= 0) {
+                metrics.record(MetricsStore.Metric.CPU_LOAD, now, snapshot.processCpuLoad * 100);
+            }
+        } catch (Exception e) {
+            // Процесс завершился или JMX-соединение разорвано - прекращаем опрос
+            close();
+        }
+    }
+
+    // Вызывается потоком JMX-коннектора после каждой сборки
+    private void onCollection(Notification notification) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                (CompositeData) notification.getUserData());
+        // "end of GC cycle" - конкурентный цикл ZGC или Shenandoah, приложение в это время работает
+        if (info.getGcAction().contains("cycle")) return;
+        long pause = info.getGcInfo().getDuration();
+        synchronized (this) {
+            runStats.maxGcPauseMillis = Math.max(runStats.maxGcPauseMillis, pause);
+        }
+    }
+
+    /**
+     * Итоги запуска или null, если метрики так и не были получены.
+     */
+    public synchronized RunStats getRunStats() {
+        return first == null ? null : runStats;
+    }
+
+    /**
+     * JMX-соединение с JVM сервера для разовых запросов (дампы потоков, JFR) или null, если подключения нет.
+     */
+    public MBeanServerConnection getConnection() {
+        return connection;
+    }
+
+    private void closeConnector() {
+        connection = null;
+        if (connector != null) {
+            try {
+                connector.close();
+            } catch (IOException ignored) {
+            }
+            connector = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (task != null) task.cancel(false);
+        closeConnector();
+    }
+}
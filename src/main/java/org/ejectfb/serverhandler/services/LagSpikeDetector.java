@@ -0,0 +1,300 @@
+package org.ejectfb.serverhandler.services;
+
+import jdk.management.jfr.FlightRecorderMXBean;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import javax.management.MBeanServerConnection;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обнаружение провалов TPS и сбор диагностики JVM сервера в момент провала.
+ * Сигналы - строки "Can't keep up! ... Running N ms or K ticks behind" и ответ на tps ниже порога.
+ * Пока сервер здоров, детектор только ищет одну подстроку в байтах строки: без потоков,
+ * обращений к JMX и создания объектов.
+ * При срабатывании в пуле ввода-вывода через JMX-соединение {@link JvmMetricsCollector} снимаются
+ * несколько дампов потоков с интервалом и короткая запись JFR. Файлы сохраняются в
+ * &lt;архив консоли&gt;/lag/&lt;дата_время&gt;, а сводка по дампам уходит в уведомление.
+ */
+public class LagSpikeDetector {
+    // Пороги: отставание по "Can't keep up" в мс и TPS за минуту
+    private static final long BEHIND_MILLIS = Long.getLong("lag.behindMillis", 2000);
+    private static final double TPS_THRESHOLD = Double.parseDouble(System.getProperty("lag.tps", "15"));
+    // Не чаще одного сбора за период, -Dlag.cooldownMinutes
+    private static final long COOLDOWN_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("lag.cooldownMinutes", 30));
+    private static final int DUMPS = Math.max(1, Integer.getInteger("lag.dumps", 3));
+    private static final long DUMP_INTERVAL_MILLIS = Long.getLong("lag.dumpIntervalMillis", 2000);
+    // Длительность записи JFR, 0 - без записи
+    private static final int JFR_SECONDS = Integer.getInteger("lag.jfrSeconds", 30);
+    private static final String MAIN_THREAD = "Server thread";
+    private static final int HOT_THREADS = 3;
+    private static final byte[][] MARKERS = {"Can't keep up!".getBytes(StandardCharsets.US_ASCII)};
+    private static final Pattern BEHIND = Pattern.compile("Running (\\d+)ms or (\\d+) ticks behind");
+    private static final DateTimeFormatter DIR_NAME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").withZone(ZoneId.systemDefault());
+
+    private final Path dir;
+    private final Supplier<JvmMetricsCollector> jvm;
+    private final Executor ioPool;
+    private final Consumer<String> log;
+    private final Consumer<String> notify;
+    private final AtomicBoolean capturing = new AtomicBoolean();
+    private volatile long lastCapture;
+    private volatile long lastTps;
+
+    /**
+     * @param dir    каталог диагностики этого сервера
+     * @param jvm    сборщик метрик текущего запуска (null, пока сервер не запущен)
+     * @param ioPool пул, в котором снимаются дампы
+     * @param log    вывод сообщений в консоль экземпляра
+     * @param notify отправляет сводку в уведомления
+     */
+    public LagSpikeDetector(Path dir, Supplier<JvmMetricsCollector> jvm, Executor ioPool,
+                            Consumer<String> log, Consumer<String> notify) {
+        this.dir = dir;
+        this.jvm = jvm;
+        this.ioPool = ioPool;
+        this.log = log;
+        this.notify = notify;
+    }
+
+    /**
+     * Проверяет строку вывода сервера. Вызывается из потока чтения вывода.
+     */
+    public void acceptLine(ConsoleLine line) {
+        if (!line.containsAny(MARKERS)) return;
+
+        Matcher m = BEHIND.matcher(line);
+        if (!m.find()) {
+            trigger("сервер не успевает обрабатывать тики");
+        } else if (Long.parseLong(m.group(1)) >= BEHIND_MILLIS) {
+            trigger("отставание " + m.group(1) + " мс (" + m.group(2) + " тиков)");
+        }
+    }
+
+    /**
+     * Проверяет свежий ответ на tps. Вызывается после разбора строки статистики.
+     */
+    public void acceptTps(ServerDataService.Tps tps) {
+        if (tps == null || tps.timestamp == lastTps) return;
+        lastTps = tps.timestamp;
+        if (tps.last1m < TPS_THRESHOLD) {
+            trigger(String.format(Locale.ROOT, "TPS за минуту %.2f", tps.last1m));
+        }
+    }
+
+    private void trigger(String reason) {
+        long now = System.currentTimeMillis();
+        if (lastCapture != 0 && now - lastCapture < COOLDOWN_MILLIS) return;
+        if (!capturing.compareAndSet(false, true)) return;
+        lastCapture = now;
+        ioPool.execute(() -> {
+            try {
+                capture(reason, now);
+            } catch (Exception e) {
+                log.accept("Ошибка сбора диагностики провала TPS: " + e.getMessage());
+            } finally {
+                capturing.set(false);
+            }
+        });
+    }
+
+    private void capture(String reason, long started) throws IOException, InterruptedException {
+        Path target = dir.resolve(DIR_NAME.format(Instant.ofEpochMilli(started)));
+        Files.createDirectories(target);
+        log.accept("Провал TPS: " + reason + ", сбор диагностики в " + target);
+
+        StringBuilder summary = new StringBuilder("🐌 Провал TPS: ").append(reason);
+        JvmMetricsCollector collector = jvm.get();
+        MBeanServerConnection connection = collector != null ? collector.getConnection() : null;
+        if (connection == null) {
+            summary.append("\nJVM сервера не подключена, дампы потоков не сняты");
+            Files.writeString(target.resolve("summary.txt"), summary, StandardCharsets.UTF_8);
+            notify.accept(summary.toString());
+            return;
+        }
+
+        // Запись JFR идёт, пока снимаются дампы
+        FlightRecorderMXBean recorder = null;
+        long recording = -1;
+        if (JFR_SECONDS > 0) {
+            try {
+                recorder = ManagementFactory.newPlatformMXBeanProxy(connection,
+                        FlightRecorderMXBean.MXBEAN_NAME, FlightRecorderMXBean.class);
+                recording = recorder.newRecording();
+                recorder.setPredefinedConfiguration(recording, "profile");
+                // Запись остановится сама, даже если обработчик не успеет её забрать
+                recorder.setRecordingOptions(recording, Map.of("name", "handler-lag-spike",
+                        "duration", (JFR_SECONDS * 2) + "s"));
+                recorder.startRecording(recording);
+            } catch (Exception e) {
+                log.accept("Не удалось начать запись JFR: " + e.getMessage());
+                recording = -1;
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = ManagementFactory.newPlatformMXBeanProxy(connection,
+                ManagementFactory.THREAD_MXBEAN_NAME, com.sun.management.ThreadMXBean.class);
+        List<String> mainFrames = new ArrayList<>();
+        Map<Long, Long> cpuFirst = new HashMap<>();
+        Map<Long, Long> cpuLast = new HashMap<>();
+        Map<Long, String> names = new HashMap<>();
+        for (int i = 0; i < DUMPS; i++) {
+            if (i > 0) Thread.sleep(DUMP_INTERVAL_MILLIS);
+            ThreadInfo[] infos = threads.dumpAllThreads(true, true);
+            long[] ids = new long[infos.length];
+            for (int t = 0; t < infos.length; t++) ids[t] = infos[t].getThreadId();
+            long[] cpu = threads.getThreadCpuTime(ids);
+
+            StringBuilder dump = new StringBuilder();
+            dump.append("Дамп ").append(i + 1).append(" из ").append(DUMPS).append(", ")
+                    .append(Instant.now()).append("\n\n");
+            for (int t = 0; t < infos.length; t++) {
+                appendThread(dump, infos[t], cpu[t]);
+                if (MAIN_THREAD.equals(infos[t].getThreadName())) mainFrames.add(topFrame(infos[t]));
+                if (cpu[t] < 0) continue;
+                cpuFirst.putIfAbsent(ids[t], cpu[t]);
+                cpuLast.put(ids[t], cpu[t]);
+                names.put(ids[t], infos[t].getThreadName());
+            }
+            Files.writeString(target.resolve("threads-" + (i + 1) + ".txt"), dump, StandardCharsets.UTF_8);
+        }
+
+        summarizeMainThread(summary, mainFrames);
+        summarizeHotThreads(summary, cpuFirst, cpuLast, names);
+        JvmMetricsCollector.Snapshot snapshot = collector.getLatest();
+        if (snapshot != null) {
+            summary.append(String.format(Locale.ROOT, "\n☕ heap %d/%d МБ, GC %d мс за последний опрос, потоков %d",
+                    snapshot.heapUsedMb, snapshot.heapMaxMb, snapshot.gcTimeDeltaMillis, snapshot.threads));
+        }
+        summary.append("\n📁 ").append(target.toAbsolutePath());
+        if (recording >= 0) summary.append("\n🎞 Запись JFR ").append(JFR_SECONDS).append(" с - recording.jfr");
+        Files.writeString(target.resolve("summary.txt"), summary, StandardCharsets.UTF_8);
+        notify.accept(summary.toString());
+
+        if (recording >= 0) {
+            long remaining = started + TimeUnit.SECONDS.toMillis(JFR_SECONDS) - System.currentTimeMillis();
+            if (remaining > 0) Thread.sleep(remaining);
+            saveRecording(recorder, recording, target.resolve("recording.jfr"));
+        }
+    }
+
+    private void saveRecording(FlightRecorderMXBean recorder, long recording, Path file) {
+        try {
+            recorder.stopRecording(recording);
+            long stream = recorder.openStream(recording, null);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                byte[] chunk;
+                while ((chunk = recorder.readStream(stream)) != null) {
+                    out.write(chunk);
+                }
+            } finally {
+                recorder.closeStream(stream);
+            }
+            log.accept("Запись JFR сохранена: " + file);
+        } catch (Exception e) {
+            log.accept("Не удалось сохранить запись JFR: " + e.getMessage());
+        } finally {
+            try {
+                recorder.closeRecording(recording);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    // Первый кадр вне JDK - там, где сервер или плагин проводит время
+    private static String topFrame(ThreadInfo info) {
+        StackTraceElement[] stack = info.getStackTrace();
+        if (stack.length == 0) return info.getThreadState().toString();
+        for (StackTraceElement frame : stack) {
+            String type = frame.getClassName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return frame.toString();
+            }
+        }
+        return stack[0].toString();
+    }
+
+    private static void summarizeMainThread(StringBuilder summary, List<String> frames) {
+        if (frames.isEmpty()) return;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String frame : frames) counts.merge(frame, 1, Integer::sum);
+        summary.append("\n🧵 Основной поток");
+        if (counts.size() == 1) {
+            summary.append(" во всех ").append(frames.size()).append(" дампах: ").append(frames.get(0));
+            return;
+        }
+        summary.append(':');
+        counts.forEach((frame, count) -> summary.append("\n  ").append(count).append("/")
+                .append(frames.size()).append(' ').append(frame));
+    }
+
+    private static void summarizeHotThreads(StringBuilder summary, Map<Long, Long> first, Map<Long, Long> last,
+                                            Map<Long, String> names) {
+        if (DUMPS < 2) return;
+        List<Map.Entry<Long, Long>> deltas = new ArrayList<>();
+        last.forEach((id, cpu) -> {
+            long delta = cpu - first.getOrDefault(id, cpu);
+            if (delta > 0) deltas.add(Map.entry(id, delta));
+        });
+        if (deltas.isEmpty()) return;
+        deltas.sort(Map.Entry.<Long, Long>comparingByValue().reversed());
+        summary.append(String.format(Locale.ROOT, "\n🔥 CPU за %.1f с:", (DUMPS - 1) * DUMP_INTERVAL_MILLIS / 1000.0));
+        for (Map.Entry<Long, Long> entry : deltas.subList(0, Math.min(HOT_THREADS, deltas.size()))) {
+            summary.append("\n  ").append(names.get(entry.getKey())).append(" - ")
+                    .append(entry.getValue() / 1_000_000).append(" мс");
+        }
+    }
+
+    // Полный стек: ThreadInfo.toString обрезает его до 8 кадров
+    private static void appendThread(StringBuilder out, ThreadInfo info, long cpuNanos) {
+        out.append('"').append(info.getThreadName()).append("\" #").append(info.getThreadId())
+                .append(' ').append(info.getThreadState());
+        if (cpuNanos >= 0) out.append(" cpu=").append(cpuNanos / 1_000_000).append("ms");
+        if (info.getLockName() != null) out.append(" on ").append(info.getLockName());
+        if (info.getLockOwnerName() != null) out.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+        out.append('\n');
+
+        StackTraceElement[] stack = info.getStackTrace();
+        MonitorInfo[] monitors = info.getLockedMonitors();
+        for (int depth = 0; depth < stack.length; depth++) {
+            out.append("\tat ").append(stack[depth]).append('\n');
+            for (MonitorInfo monitor : monitors) {
+                if (monitor.getLockedStackDepth() == depth) out.append("\t- locked ").append(monitor).append('\n');
+            }
+        }
+        LockInfo[] synchronizers = info.getLockedSynchronizers();
+        if (synchronizers.length > 0) {
+            out.append("\tLocked synchronizers:\n");
+            for (LockInfo lock : synchronizers) out.append("\t- ").append(lock).append('\n');
+        }
+        out.append('\n');
+    }
+
+    public boolean isCapturing() {
+        return capturing.get();
+    }
+}
@@ -0,0 +1,224 @@
+package org.ejectfb.serverhandler.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Структурированная команда запуска сервера: размер heap, сборщик мусора,
+ * флаги Aikar и pre-touch собираются в список аргументов JVM, а не склеиваются вручную.
+ * Неизвестные аргументы из исходной команды сохраняются как есть.
+ */
+public class LaunchProfile {
+    public enum GarbageCollector {
+        G1, ZGC, OTHER
+    }
+
+    private String javaBinary = "java";
+    private long heapMinMb = 1024;
+    private long heapMaxMb = 8192;
+    private GarbageCollector gc = GarbageCollector.OTHER;
+    private boolean aikarFlags = false;
+    private boolean preTouch = false;
+    private final List<String> extraJvmArgs = new ArrayList<>();
+    private String jar;
+    private final List<String> serverArgs = new ArrayList<>();
+
+    /**
+     * Разбирает строку команды вида "java [аргументы JVM] -jar server.jar [аргументы сервера]".
+     * @return профиль или null, если команда не похожа на прямой запуск jar-файла через java
+     *         (например, запуск через nice, taskset или sh -c) или её аргументы не удалось понять
+     */
+    public static LaunchProfile parse(String command) {
+        List<String> tokens = splitCommand(command);
+        int jarIndex = tokens.indexOf("-jar");
+        if (tokens.isEmpty() || jarIndex < 0 || jarIndex + 1 >= tokens.size()) return null;
+        if (!isJavaBinary(tokens.get(0))) return null;
+
+        LaunchProfile profile = new LaunchProfile();
+        profile.javaBinary = tokens.get(0);
+        for (String arg : tokens.subList(1, jarIndex)) {
+            if (arg.startsWith("-Xmx") || arg.startsWith("-Xms")) {
+                long size = parseSize(arg.substring(4));
+                // Размер из переменной ("-Xmx${MEM}") или с ошибкой - команду не трогаем
+                if (size <= 0) return null;
+                if (arg.startsWith("-Xmx")) profile.heapMaxMb = size;
+                else profile.heapMinMb = size;
+            } else if (arg.equals("-XX:+UseG1GC")) {
+                profile.gc = GarbageCollector.G1;
+            } else if (arg.equals("-XX:+UseZGC")) {
+                profile.gc = GarbageCollector.ZGC;
+            } else if (arg.equals("-XX:+AlwaysPreTouch")) {
+                profile.preTouch = true;
+            } else if (arg.startsWith("-Dusing.aikars.flags")) {
+                profile.aikarFlags = true;
+            } else {
+                profile.extraJvmArgs.add(arg);
+            }
+        }
+        // Флаги Aikar профиль генерирует сам, поэтому из исходной команды их не переносим
+        if (profile.aikarFlags) profile.extraJvmArgs.removeIf(LaunchProfile::isGeneratedFlag);
+        profile.jar = tokens.get(jarIndex + 1);
+        profile.serverArgs.addAll(tokens.subList(jarIndex + 2, tokens.size()));
+        return profile;
+    }
+
+    /**
+     * Аргументы процесса в порядке запуска.
+     */
+    public List<String> toArguments() {
+        List<String> args = new ArrayList<>();
+        args.add(javaBinary);
+        args.add("-Xms" + heapMinMb + "M");
+        args.add("-Xmx" + heapMaxMb + "M");
+        switch (gc) {
+            case G1 -> {
+                args.add("-XX:+UseG1GC");
+                if (aikarFlags) args.addAll(aikarG1Flags(heapMaxMb));
+            }
+            case ZGC -> args.add("-XX:+UseZGC");
+            default -> { }
+        }
+        if (preTouch) args.add("-XX:+AlwaysPreTouch");
+        args.addAll(extraJvmArgs);
+        args.add("-jar");
+        args.add(jar);
+        args.addAll(serverArgs);
+        return args;
+    }
+
+    /**
+     * Команда одной строкой для поля настроек.
+     */
+    public String toCommandLine() {
+        StringBuilder sb = new StringBuilder();
+        for (String arg : toArguments()) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(arg.contains(" ") ? "\"" + arg + "\"" : arg);
+        }
+        return sb.toString();
+    }
+
+    // Рекомендуемые флаги для G1 (https://mcflags.emc.gs), для больших heap - свой набор
+    private static List<String> aikarG1Flags(long heapMaxMb) {
+        boolean large = heapMaxMb >= 12 * 1024;
+        return List.of(
+                "-XX:+ParallelRefProcEnabled",
+                "-XX:MaxGCPauseMillis=200",
+                "-XX:+UnlockExperimentalVMOptions",
+                "-XX:+DisableExplicitGC",
+                "-XX:G1NewSizePercent=" + (large ? 40 : 30),
+                "-XX:G1MaxNewSizePercent=" + (large ? 50 : 40),
+                "-XX:G1HeapRegionSize=" + (large ? "16M" : "8M"),
+                "-XX:G1ReservePercent=" + (large ? 15 : 20),
+                "-XX:G1HeapWastePercent=5",
+                "-XX:G1MixedGCCountTarget=4",
+                "-XX:InitiatingHeapOccupancyPercent=" + (large ? 20 : 15),
+                "-XX:G1MixedGCLiveThresholdPercent=90",
+                "-XX:G1RSetUpdatingPauseTimePercent=5",
+                "-XX:SurvivorRatio=32",
+                "-XX:+PerfDisableSharedMem",
+                "-XX:MaxTenuringThreshold=1",
+                "-Dusing.aikars.flags=https://mcflags.emc.gs",
+                "-Daikars.new.flags=true");
+    }
+
+    private static boolean isGeneratedFlag(String arg) {
+        if (arg.equals("-Daikars.new.flags=true")) return true;
+        for (String flag : aikarG1Flags(0)) {
+            int eq = flag.indexOf('=');
+            if (eq > 0 ? arg.startsWith(flag.substring(0, eq + 1)) : arg.equals(flag)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isJavaBinary(String token) {
+        String name = token.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        return name.equals("java") || name.equals("java.exe");
+    }
+
+    /**
+     * Размер в мегабайтах или -1, если значение не удалось разобрать.
+     */
+    private static long parseSize(String value) {
+        String v = value.trim().toUpperCase(Locale.ROOT);
+        if (v.isEmpty()) return -1;
+        char unit = v.charAt(v.length() - 1);
+        String digits = Character.isDigit(unit) ? v : v.substring(0, v.length() - 1);
+        long number;
+        try {
+            number = Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return switch (unit) {
+            case 'G' -> number * 1024;
+            case 'M' -> number;
+            case 'K' -> number / 1024;
+            default -> number / (1024 * 1024);
+        };
+    }
+
+    private static List<String> splitCommand(String command) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (char c : command.trim().toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) tokens.add(current.toString());
+        return tokens;
+    }
+
+    //Getters and Setters
+
+    public long getHeapMinMb() {
+        return heapMinMb;
+    }
+
+    public void setHeapMinMb(long heapMinMb) {
+        this.heapMinMb = heapMinMb;
+    }
+
+    public long getHeapMaxMb() {
+        return heapMaxMb;
+    }
+
+    public void setHeapMaxMb(long heapMaxMb) {
+        this.heapMaxMb = heapMaxMb;
+    }
+
+    public GarbageCollector getGc() {
+        return gc;
+    }
+
+    public void setGc(GarbageCollector gc) {
+        this.gc = gc;
+    }
+
+    public boolean isAikarFlags() {
+        return aikarFlags;
+    }
+
+    public void setAikarFlags(boolean aikarFlags) {
+        this.aikarFlags = aikarFlags;
+    }
+
+    public boolean isPreTouch() {
+        return preTouch;
+    }
+
+    public void setPreTouch(boolean preTouch) {
+        this.preTouch = preTouch;
+    }
+}
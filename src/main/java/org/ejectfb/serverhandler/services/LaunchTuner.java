@@ -0,0 +1,165 @@
+package org.ejectfb.serverhandler.services;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Подбирает параметры запуска по измерениям прошлых запусков:
+ * живой набор данных после GC определяет размер heap, доля времени в GC - выбор сборщика.
+ * Итоги последних запусков хранятся в файле, поэтому опыт не теряется при перезапуске приложения.
+ */
+public class LaunchTuner {
+    private static final int HISTORY_SIZE = 5;
+    // Запуски короче этого не показательны - heap ещё не прогрет
+    private static final long MIN_RUN_MILLIS = 10 * 60 * 1000L;
+    private static final double HEAP_GROW_THRESHOLD = 0.70;
+    private static final double HEAP_SHRINK_THRESHOLD = 0.30;
+    private static final long MIN_HEAP_MB = 2048;
+    private static final double GC_OVERHEAD_LIMIT_PERCENT = 5.0;
+    private static final long MAX_PAUSE_LIMIT_MILLIS = 500;
+
+    /** Рекомендация: изменённый профиль и объяснение каждого изменения. */
+    public static final class Recommendation {
+        public final LaunchProfile profile;
+        public final List<String> reasons;
+
+        Recommendation(LaunchProfile profile, List<String> reasons) {
+            this.profile = profile;
+            this.reasons = reasons;
+        }
+
+        public boolean hasChanges() {
+            return !reasons.isEmpty();
+        }
+    }
+
+    private final Path historyFile;
+
+    public LaunchTuner(Path historyFile) {
+        this.historyFile = historyFile;
+    }
+
+    /**
+     * Сохраняет итоги завершившегося запуска.
+     */
+    public synchronized void recordRun(JvmMetricsCollector.RunStats stats) throws IOException {
+        if (stats == null || stats.durationMillis < MIN_RUN_MILLIS) return;
+
+        List<JvmMetricsCollector.RunStats> runs = loadRuns();
+        runs.add(stats);
+        while (runs.size() > HISTORY_SIZE) runs.remove(0);
+
+        Properties props = new Properties();
+        for (int i = 0; i < runs.size(); i++) {
+            JvmMetricsCollector.RunStats run = runs.get(i);
+            props.setProperty("run." + i + ".heapMaxMb", String.valueOf(run.heapMaxMb));
+            props.setProperty("run." + i + ".peakHeapAfterGcMb", String.valueOf(run.peakHeapAfterGcMb));
+            props.setProperty("run." + i + ".maxGcPauseMillis", String.valueOf(run.maxGcPauseMillis));
+            props.setProperty("run." + i + ".totalGcMillis", String.valueOf(run.totalGcMillis));
+            props.setProperty("run." + i + ".durationMillis", String.valueOf(run.durationMillis));
+        }
+        // Сбой посреди записи не должен оставить пустую или обрезанную историю
+        SettingsStore.writeAtomically(historyFile, props);
+    }
+
+    /**
+     * Рекомендация для следующего запуска на основе сохранённых запусков.
+     */
+    public synchronized Recommendation recommend(LaunchProfile profile) throws IOException {
+        List<String> reasons = new ArrayList<>();
+        List<JvmMetricsCollector.RunStats> runs = loadRuns();
+        if (runs.isEmpty()) return new Recommendation(profile, reasons);
+
+        long peakAfterGc = 0;
+        long worstPause = 0;
+        double gcOverhead = 0;
+        for (JvmMetricsCollector.RunStats run : runs) {
+            peakAfterGc = Math.max(peakAfterGc, run.peakHeapAfterGcMb);
+            worstPause = Math.max(worstPause, run.maxGcPauseMillis);
+            gcOverhead = Math.max(gcOverhead, run.gcOverheadPercent());
+        }
+
+        long heapMax = profile.getHeapMaxMb();
+        long physicalMb = physicalMemoryMb();
+        if (peakAfterGc > heapMax * HEAP_GROW_THRESHOLD) {
+            long target = roundToGb(peakAfterGc * 2);
+            if (physicalMb > 0) target = Math.min(target, roundToGb(physicalMb * 3 / 4));
+            if (target > heapMax) {
+                reasons.add(String.format(Locale.ROOT, "живые данные после GC достигали %d МБ из %d МБ - увеличить -Xmx до %d МБ",
+                        peakAfterGc, heapMax, target));
+                profile.setHeapMaxMb(target);
+            }
+        } else if (peakAfterGc > 0 && peakAfterGc < heapMax * HEAP_SHRINK_THRESHOLD && heapMax > MIN_HEAP_MB) {
+            long target = Math.max(MIN_HEAP_MB, roundToGb(peakAfterGc * 3));
+            if (target < heapMax) {
+                reasons.add(String.format(Locale.ROOT, "живые данные после GC не превышали %d МБ - уменьшить -Xmx до %d МБ",
+                        peakAfterGc, target));
+                profile.setHeapMaxMb(target);
+            }
+        }
+
+        if (profile.getGc() != LaunchProfile.GarbageCollector.ZGC
+                && profile.getHeapMaxMb() >= 12 * 1024
+                && (gcOverhead > GC_OVERHEAD_LIMIT_PERCENT || worstPause > MAX_PAUSE_LIMIT_MILLIS)) {
+            reasons.add(String.format(Locale.ROOT, "GC занимал до %.1f%% времени, худшая пауза %d мс - перейти на ZGC",
+                    gcOverhead, worstPause));
+            profile.setGc(LaunchProfile.GarbageCollector.ZGC);
+            profile.setAikarFlags(false);
+        } else if (profile.getGc() == LaunchProfile.GarbageCollector.OTHER) {
+            reasons.add("сборщик не задан - включить G1 с флагами Aikar");
+            profile.setGc(LaunchProfile.GarbageCollector.G1);
+            profile.setAikarFlags(true);
+        }
+
+        // При pre-touch heap выделяется целиком при старте, поэтому Xms = Xmx
+        if (!profile.isPreTouch() || profile.getHeapMinMb() != profile.getHeapMaxMb()) {
+            reasons.add("выделить heap заранее: -Xms = -Xmx и -XX:+AlwaysPreTouch");
+            profile.setPreTouch(true);
+            profile.setHeapMinMb(profile.getHeapMaxMb());
+        }
+
+        return new Recommendation(profile, reasons);
+    }
+
+    private List<JvmMetricsCollector.RunStats> loadRuns() throws IOException {
+        List<JvmMetricsCollector.RunStats> runs = new ArrayList<>();
+        if (!Files.exists(historyFile)) return runs;
+
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        for (int i = 0; props.containsKey("run." + i + ".heapMaxMb"); i++) {
+            JvmMetricsCollector.RunStats run = new JvmMetricsCollector.RunStats();
+            run.heapMaxMb = Long.parseLong(props.getProperty("run." + i + ".heapMaxMb"));
+            run.peakHeapAfterGcMb = Long.parseLong(props.getProperty("run." + i + ".peakHeapAfterGcMb"));
+            // В старых файлах пауз не было, только прирост времени GC за секунду - он не пауза
+            run.maxGcPauseMillis = Long.parseLong(props.getProperty("run." + i + ".maxGcPauseMillis", "0"));
+            run.totalGcMillis = Long.parseLong(props.getProperty("run." + i + ".totalGcMillis"));
+            run.durationMillis = Long.parseLong(props.getProperty("run." + i + ".durationMillis"));
+            runs.add(run);
+        }
+        return runs;
+    }
+
+    private static long roundToGb(long mb) {
+        return Math.max(1024, (mb + 1023) / 1024 * 1024);
+    }
+
+    private static long physicalMemoryMb() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof OperatingSystemMXBean sunOs) {
+            return sunOs.getTotalMemorySize() / (1024 * 1024);
+        }
+        return -1;
+    }
+}
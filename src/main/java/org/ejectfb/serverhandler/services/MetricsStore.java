@@ -0,0 +1,40 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.TimeSeries;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * История метрик сервера в памяти процесса. Живёт дольше одного запуска сервера,
+ * поэтому по ней видно деградацию TPS и рост памяти за дни и недели.
+ */
+public class MetricsStore {
+    public enum Metric {
+        TPS, PLAYERS, MEMORY_USED_MB, HEAP_USED_MB, GC_TIME_MS, THREADS, CPU_LOAD
+    }
+
+    private final Map<Metric, TimeSeries> series = new EnumMap<>(Metric.class);
+
+    public MetricsStore() {
+        for (Metric metric : Metric.values()) {
+            series.put(metric, new TimeSeries());
+        }
+    }
+
+    public void record(Metric metric, long timestamp, double value) {
+        series.get(metric).record(timestamp, value);
+    }
+
+    public TimeSeries get(Metric metric) {
+        return series.get(metric);
+    }
+
+    /**
+     * Сводка метрики за последний период или null, если данных нет.
+     */
+    public TimeSeries.Aggregate summary(Metric metric, long periodMillis) {
+        long now = System.currentTimeMillis();
+        return series.get(metric).summary(now - periodMillis, now);
+    }
+}
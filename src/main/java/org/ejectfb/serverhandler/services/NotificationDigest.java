@@ -0,0 +1,117 @@
+package org.ejectfb.serverhandler.services;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.ejectfb.serverhandler.utils.StringUtils.formatDuration;
+
+/**
+ * Объединяет уведомления за окно времени в одно сообщение-сводку.
+ * Повторы одного события не дублируются, а считаются ("упал 7 раз за 2м").
+ * Первое критическое событие в окне отправляется сразу вместе со всем накопленным,
+ * его повторы попадают в следующую сводку. Плановые сообщения (статистика) отправляются сразу
+ * отдельно и накопленную сводку не трогают.
+ */
+public class NotificationDigest {
+    public enum Priority {
+        /** Попадает в сводку за окно. */
+        NORMAL,
+        /** Отправляется сразу отдельным сообщением, сводка продолжает копиться. */
+        IMMEDIATE,
+        /** Отправляется сразу вместе со всей накопленной сводкой. */
+        CRITICAL
+    }
+
+    private static final class Entry {
+        String text;
+        int count;
+        final long firstAt;
+        long lastAt;
+
+        Entry(String text, long now) {
+            this.text = text;
+            this.firstAt = now;
+            this.lastAt = now;
+        }
+    }
+
+    private final Consumer<String> sink;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private final Map<String, Long> criticalSentAt = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param sink      отправляет готовое сообщение
+     * @param scheduler планировщик отложенной отправки сводки
+     * @param window    окно, за которое события собираются в одну сводку
+     */
+    public NotificationDigest(Consumer<String> sink, ScheduledExecutorService scheduler, Duration window) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.windowMillis = window.toMillis();
+    }
+
+    /**
+     * @param key      ключ события, одинаковые ключи объединяются
+     * @param text     текст уведомления, при повторах берётся последний
+     * @param priority CRITICAL и IMMEDIATE отправляются без ожидания окна
+     */
+    public synchronized void notify(String key, String text, Priority priority) {
+        if (priority == Priority.IMMEDIATE) {
+            sink.accept(text);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Entry entry = pending.computeIfAbsent(key, k -> new Entry(text, now));
+        entry.text = text;
+        entry.count++;
+        entry.lastAt = now;
+
+        if (priority == Priority.CRITICAL) {
+            Long sentAt = criticalSentAt.get(key);
+            if (sentAt == null || now - sentAt >= windowMillis) {
+                criticalSentAt.put(key, now);
+                flush();
+                return;
+            }
+        }
+
+        if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) return;
+
+        String message;
+        if (pending.size() == 1 && pending.values().iterator().next().count == 1) {
+            message = pending.values().iterator().next().text;
+        } else {
+            StringBuilder sb = new StringBuilder("🗒 Сводка событий:");
+            for (Entry entry : pending.values()) {
+                sb.append("\n").append(entry.text);
+                if (entry.count > 1) {
+                    sb.append(" (").append(entry.count).append(" раз за ")
+                            .append(formatDuration(entry.lastAt - entry.firstAt)).append(")");
+                }
+            }
+            message = sb.toString();
+        }
+        pending.clear();
+        sink.accept(message);
+    }
+}
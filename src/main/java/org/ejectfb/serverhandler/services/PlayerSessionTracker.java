@@ -0,0 +1,412 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Сеансы игроков по строкам входа и выхода в консоли, без опроса командой list.
+ * Имена игроков переводятся в номера один раз, данные сеансов хранятся в примитивных массивах по номеру,
+ * а онлайн - в плотном массиве номеров с обратным индексом, поэтому вход, выход и число игроков - O(1).
+ * <p>
+ * История пишется в компактный двоичный журнал (имя - один раз, событие - 13 байт). При открытии журнал
+ * воспроизводится и переписывается снимком итогов, поэтому файл не растёт бесконечно.
+ */
+public class PlayerSessionTracker implements AutoCloseable {
+    private static final int MAGIC = 0x4d534850; // "MSHP"
+    private static final byte VERSION = 1;
+    private static final byte NAME = 'N';
+    private static final byte JOIN = 'J';
+    private static final byte LEAVE = 'L';
+    private static final byte STOP = 'R';
+    private static final byte SUMMARY = 'S';
+    private static final byte PEAK = 'P';
+
+    private static final byte[][] MARKERS = {
+            " joined the game".getBytes(StandardCharsets.UTF_8),
+            " left the game".getBytes(StandardCharsets.UTF_8),
+            " lost connection: ".getBytes(StandardCharsets.UTF_8)
+    };
+    // Только сообщение сервера целиком: префикс лога Paper "[12:00:00 INFO]: " или Spigot
+    // "[12:00:00] [Server thread/INFO]: ", затем имя. Строки чата начинаются с "<" и не подходят.
+    private static final Pattern EVENT = Pattern.compile(
+            "^(?:\\[[^\\]]*\\](?: \\[[^\\]]*\\])?: )?([.*]?\\w{1,16}) (joined the game|left the game|lost connection: .*)$");
+
+    /** Итоги по одному игроку. */
+    public static final class Player {
+        public final String name;
+        public final long playtimeMillis;
+        public final int sessions;
+        public final long lastSeen;
+        public final boolean online;
+
+        Player(String name, long playtimeMillis, int sessions, long lastSeen, boolean online) {
+            this.name = name;
+            this.playtimeMillis = playtimeMillis;
+            this.sessions = sessions;
+            this.lastSeen = lastSeen;
+            this.online = online;
+        }
+    }
+
+    private final Path file;
+    private final MetricsStore metrics;
+
+    // Таблица имён: имя -> номер, номер -> имя
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[64];
+    private int playerCount = 0;
+    // Данные по номеру игрока; sessionStart == 0 - игрок не в сети
+    private long[] sessionStart = new long[64];
+    private long[] playtime = new long[64];
+    private int[] sessions = new int[64];
+    private long[] lastSeen = new long[64];
+    // Номера игроков в сети и позиция каждого игрока в этом массиве (-1 - не в сети)
+    private int[] onlineIds = new int[64];
+    private int[] onlinePosition = filled(64);
+
+    private volatile int online = 0;
+    private volatile int peak = 0;
+    private volatile long peakAt = 0;
+
+    private DataOutputStream journal;
+
+    /**
+     * Учёт без сохранения на диск.
+     * @param metrics хранилище, куда записывается число игроков при каждом изменении, или null
+     */
+    public PlayerSessionTracker(MetricsStore metrics) {
+        this.file = null;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Открывает журнал сеансов и восстанавливает по нему историю.
+     * @param file    файл журнала
+     * @param metrics хранилище, куда записывается число игроков при каждом изменении, или null
+     */
+    public PlayerSessionTracker(Path file, MetricsStore metrics) throws IOException {
+        this.file = file;
+        this.metrics = metrics;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        long lastTimestamp = replay(file);
+        // Сеансы, не закрытые к моменту остановки обработчика, заканчиваются последним известным событием
+        closeAll(lastTimestamp);
+        compact();
+        journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Разбирает строку вывода сервера. Строки без маркеров входа и выхода отсекаются без декодирования.
+     * @return true, если строка изменила состав игроков
+     */
+    public boolean acceptLine(ConsoleLine line) {
+        if (!line.containsAny(MARKERS)) return false;
+        Matcher m = EVENT.matcher(line);
+        if (!m.matches()) return false;
+        long now = System.currentTimeMillis();
+        return m.group(2).equals("joined the game") ? join(m.group(1), now) : leave(m.group(1), now);
+    }
+
+    /**
+     * @return false, если игрок уже в сети
+     */
+    public synchronized boolean join(String name, long timestamp) {
+        int id = idOf(name);
+        if (sessionStart[id] != 0) return false;
+        startSession(id, timestamp);
+        write(JOIN, timestamp, id);
+        recordOnline(timestamp);
+        return true;
+    }
+
+    /**
+     * Закрывает сеанс игрока. "lost connection" и "left the game" приходят оба, второе игнорируется.
+     * @return false, если игрок не был в сети
+     */
+    public synchronized boolean leave(String name, long timestamp) {
+        Integer id = ids.get(name);
+        if (id == null || sessionStart[id] == 0) return false;
+        endSession(id, timestamp);
+        write(LEAVE, timestamp, id);
+        recordOnline(timestamp);
+        return true;
+    }
+
+    /**
+     * Сервер остановлен или упал - все сеансы закрываются.
+     */
+    public synchronized void serverStopped(long timestamp) {
+        if (online == 0) return;
+        closeAll(timestamp);
+        write(STOP, timestamp, -1);
+        recordOnline(timestamp);
+    }
+
+    // Запросы
+
+    public int getOnlineCount() {
+        return online;
+    }
+
+    /**
+     * Наибольшее число игроков одновременно за всю историю.
+     */
+    public int getPeak() {
+        return peak;
+    }
+
+    public long getPeakAt() {
+        return peakAt;
+    }
+
+    public synchronized List<String> getOnlinePlayers() {
+        List<String> result = new ArrayList<>(online);
+        for (int i = 0; i < online; i++) {
+            result.add(names[onlineIds[i]]);
+        }
+        return result;
+    }
+
+    public synchronized int getKnownPlayers() {
+        return playerCount;
+    }
+
+    /**
+     * Итоги игрока с учётом текущего сеанса или null, если игрок не заходил.
+     */
+    public synchronized Player getPlayer(String name) {
+        Integer id = ids.get(name);
+        return id == null ? null : player(id, System.currentTimeMillis());
+    }
+
+    /**
+     * Игроки с наибольшим временем в игре.
+     */
+    public synchronized List<Player> topByPlaytime(int limit) {
+        long now = System.currentTimeMillis();
+        List<Player> result = new ArrayList<>(playerCount);
+        for (int id = 0; id < playerCount; id++) {
+            result.add(player(id, now));
+        }
+        result.sort(Comparator.comparingLong((Player p) -> p.playtimeMillis).reversed());
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия журнала игроков: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    private Player player(int id, long now) {
+        long current = sessionStart[id] != 0 ? now - sessionStart[id] : 0;
+        return new Player(names[id], playtime[id] + current, sessions[id],
+                sessionStart[id] != 0 ? now : lastSeen[id], sessionStart[id] != 0);
+    }
+
+    private int idOf(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) return existing;
+
+        int id = playerCount++;
+        if (id == names.length) grow();
+        String interned = name.intern();
+        names[id] = interned;
+        ids.put(interned, id);
+        write(NAME, 0, id);
+        return id;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        sessionStart = Arrays.copyOf(sessionStart, capacity);
+        playtime = Arrays.copyOf(playtime, capacity);
+        sessions = Arrays.copyOf(sessions, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        onlineIds = Arrays.copyOf(onlineIds, capacity);
+        int[] positions = filled(capacity);
+        System.arraycopy(onlinePosition, 0, positions, 0, onlinePosition.length);
+        onlinePosition = positions;
+    }
+
+    private void startSession(int id, long timestamp) {
+        sessionStart[id] = Math.max(1, timestamp);
+        sessions[id]++;
+        int count = online;
+        onlineIds[count] = id;
+        onlinePosition[id] = count;
+        online = count + 1;
+        if (count + 1 > peak) {
+            peak = count + 1;
+            peakAt = timestamp;
+        }
+    }
+
+    private void endSession(int id, long timestamp) {
+        playtime[id] += Math.max(0, timestamp - sessionStart[id]);
+        lastSeen[id] = timestamp;
+        sessionStart[id] = 0;
+        // Последний игрок в сети занимает место ушедшего
+        int position = onlinePosition[id];
+        int last = onlineIds[online - 1];
+        onlineIds[position] = last;
+        onlinePosition[last] = position;
+        onlinePosition[id] = -1;
+        online = online - 1;
+    }
+
+    private void closeAll(long timestamp) {
+        while (online > 0) {
+            endSession(onlineIds[online - 1], timestamp);
+        }
+    }
+
+    private void recordOnline(long timestamp) {
+        if (metrics != null) metrics.record(MetricsStore.Metric.PLAYERS, timestamp, online);
+    }
+
+    // Журнал
+
+    private void write(byte type, long timestamp, int id) {
+        if (journal == null) return;
+        try {
+            journal.writeByte(type);
+            if (type == NAME) {
+                journal.writeInt(id);
+                journal.writeUTF(names[id]);
+            } else {
+                journal.writeLong(timestamp);
+                journal.writeInt(id);
+            }
+            journal.flush();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи журнала игроков, сохранение отключено: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Восстанавливает состояние по журналу. Недописанная последняя запись отбрасывается.
+     * @return время последнего события
+     */
+    private long replay(Path path) throws IOException {
+        long lastTimestamp = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Неизвестный формат журнала игроков: " + path);
+            }
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case NAME -> {
+                        int id = in.readInt();
+                        String name = in.readUTF();
+                        if (id != playerCount) throw new IOException("Повреждён журнал игроков: " + path);
+                        if (id == names.length) grow();
+                        names[id] = name.intern();
+                        ids.put(names[id], id);
+                        playerCount++;
+                    }
+                    case JOIN, LEAVE, STOP -> {
+                        long timestamp = in.readLong();
+                        int id = in.readInt();
+                        lastTimestamp = Math.max(lastTimestamp, timestamp);
+                        if (type == STOP) closeAll(timestamp);
+                        else if (id < 0 || id >= playerCount) throw new IOException("Повреждён журнал игроков: " + path);
+                        else if (type == JOIN && sessionStart[id] == 0) startSession(id, timestamp);
+                        else if (type == LEAVE && sessionStart[id] != 0) endSession(id, timestamp);
+                    }
+                    case SUMMARY -> {
+                        int id = in.readInt();
+                        if (id < 0 || id >= playerCount) throw new IOException("Повреждён журнал игроков: " + path);
+                        playtime[id] = in.readLong();
+                        sessions[id] = in.readInt();
+                        lastSeen[id] = in.readLong();
+                        lastTimestamp = Math.max(lastTimestamp, lastSeen[id]);
+                    }
+                    case PEAK -> {
+                        peak = in.readInt();
+                        peakAt = in.readLong();
+                    }
+                    default -> throw new IOException("Повреждён журнал игроков: " + path);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (EOFException e) {
+            // Конец журнала или недописанная запись
+            return lastTimestamp;
+        }
+    }
+
+    /**
+     * Переписывает журнал снимком: имена, итоги по игрокам и пик. Запись атомарная.
+     */
+    private void compact() throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                for (int id = 0; id < playerCount; id++) {
+                    out.writeByte(NAME);
+                    out.writeInt(id);
+                    out.writeUTF(names[id]);
+                }
+                for (int id = 0; id < playerCount; id++) {
+                    out.writeByte(SUMMARY);
+                    out.writeInt(id);
+                    out.writeLong(playtime[id]);
+                    out.writeInt(sessions[id]);
+                    out.writeLong(lastSeen[id]);
+                }
+                out.writeByte(PEAK);
+                out.writeInt(peak);
+                out.writeLong(peakAt);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int[] filled(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, -1);
+        return array;
+    }
+}
@@ -0,0 +1,130 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.CronExpression;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Задание по расписанию: команды консоли или действие над сервером по выражению cron.
+ * Несколько команд одного задания уходят в stdin одной пачкой. По умолчанию у команд расписания
+ * фоновый приоритет, чтобы рассылки не задерживали команды оператора.
+ * <p>
+ * Формат в файле расписания:
+ * <pre>
+ * schedule.announce.cron=*&#47;30 * * * *
+ * schedule.announce.command=say Голосуйте за сервер!\nsay Сайт: example.org
+ * schedule.restart.cron=0 5 * * *
+ * schedule.restart.action=restart
+ * schedule.restart.servers=main,creative
+ * schedule.backup.cron=@hourly
+ * schedule.backup.action=backup
+ * </pre>
+ * Без servers задание выполняется на всех серверах.
+ */
+public class ScheduledCommand {
+    public enum Action {
+        COMMAND, START, STOP, RESTART, BACKUP
+    }
+
+    private static final String PREFIX = "schedule.";
+
+    private final String id;
+    private CronExpression cron;
+    private Action action = Action.COMMAND;
+    private final List<String> commands = new ArrayList<>();
+    private final Set<String> servers = new LinkedHashSet<>();
+    private CommandQueue.Lane lane = CommandQueue.Lane.LOW;
+
+    public ScheduledCommand(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Читает задания из свойств вида schedule.&lt;id&gt;.&lt;параметр&gt;.
+     * @throws IllegalArgumentException если задание задано с ошибкой
+     */
+    public static List<ScheduledCommand> parse(Properties properties) {
+        Set<String> ids = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(PREFIX)) continue;
+            int dot = key.indexOf('.', PREFIX.length());
+            if (dot > PREFIX.length()) ids.add(key.substring(PREFIX.length(), dot));
+        }
+
+        List<ScheduledCommand> schedule = new ArrayList<>();
+        for (String id : ids) {
+            String base = PREFIX + id + ".";
+            ScheduledCommand entry = new ScheduledCommand(id);
+            String cron = properties.getProperty(base + "cron");
+            if (cron == null || cron.isBlank()) {
+                throw new IllegalArgumentException("Задание " + id + ": не задано расписание cron");
+            }
+            try {
+                entry.cron = CronExpression.parse(cron);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Задание " + id + ": " + e.getMessage());
+            }
+
+            String action = properties.getProperty(base + "action", "command").trim();
+            try {
+                entry.action = Action.valueOf(action.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Задание " + id + ": неизвестное действие " + action);
+            }
+            for (String command : properties.getProperty(base + "command", "").split("\n")) {
+                if (!command.isBlank()) entry.commands.add(command.trim());
+            }
+            if (entry.action == Action.COMMAND && entry.commands.isEmpty()) {
+                throw new IllegalArgumentException("Задание " + id + ": не задана команда");
+            }
+
+            for (String server : properties.getProperty(base + "servers", "").split(",")) {
+                if (!server.isBlank()) entry.servers.add(server.trim());
+            }
+            String priority = properties.getProperty(base + "priority");
+            if (priority != null) {
+                entry.lane = CommandQueue.Lane.valueOf(priority.trim().toUpperCase(Locale.ROOT));
+            }
+            schedule.add(entry);
+        }
+        return schedule;
+    }
+
+    /**
+     * Выполняется ли задание на этом сервере.
+     */
+    public boolean appliesTo(ServerInstance instance) {
+        return servers.isEmpty() || servers.contains(instance.getName());
+    }
+
+    //Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public CronExpression getCron() {
+        return cron;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    public Set<String> getServers() {
+        return servers;
+    }
+
+    public CommandQueue.Lane getLane() {
+        return lane;
+    }
+}
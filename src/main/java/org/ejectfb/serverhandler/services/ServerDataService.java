@@ -1,64 +1,128 @@
 package org.ejectfb.serverhandler.services;
 
-import static org.ejectfb.serverhandler.utils.StringUtils.formatDuration;
+import org.ejectfb.serverhandler.utils.ConsoleLine;
 
-public class ServerDataService {
-    private String onlinePlayers = null;
-    private String tps = null;
-    private String memory = null;
-    private String upTime = null;
-    private long serverStartTime;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-    public ServerDataService() {}
+import static org.ejectfb.serverhandler.utils.StringUtils.formatDuration;
 
-    public ServerDataService(String onlinePlayers, String tps, String memory, int serverStartTime) {
-        this.onlinePlayers = onlinePlayers;
-        this.tps = tps;
-        this.memory = memory;
-        this.serverStartTime = serverStartTime;
+/**
+ * Статистика сервера, собираемая потоково: каждая строка вывода процесса
+ * разбирается один раз при поступлении, а результаты публикуются атомарно.
+ * Полный текст консоли для сбора статистики больше не нужен.
+ */
+public class ServerDataService {
+    private static final String UNKNOWN = "Неизвестно...";
+
+    // Одно регулярное выражение на все известные строки - одна проверка на строку вывода.
+    // Примеры строк:
+    //   "[Server thread/INFO]: There are 2/20 players online:"
+    //   "[Server thread/INFO]: There are 2 of a max of 20 players online: ..."
+    //   "[Server thread/INFO]: TPS from last 1m, 5m, 15m: 19.99, *20.0, 20.0"
+    //   "[Server thread/INFO]: Current Memory Usage: 1024/8192 mb (Max: 8192 mb)"
+    private static final Pattern STATS_PATTERN = Pattern.compile(
+            "There are (\\d+)(?:/| of a max of )(\\d+) players online"
+                    + "|TPS from last 1m, 5m, 15m: [^\\d,]*([\\d.]+), [^\\d,]*([\\d.]+), [^\\d,]*([\\d.]+)"
+                    + "|Current Memory Usage: (.+)");
+    private static final Pattern LEADING_NUMBER = Pattern.compile("^\\D*(\\d+)");
+    // Маркеры тех же строк в байтах: строка декодируется и проверяется регулярным выражением, только если маркер найден
+    private static final byte[][] MARKERS = {
+            "players online".getBytes(StandardCharsets.US_ASCII),
+            "TPS from last".getBytes(StandardCharsets.US_ASCII),
+            "Current Memory Usage".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    /** Снимок количества игроков, публикуется целиком. */
+    public static final class Players {
+        public final int online;
+        public final int max;
+        public final long timestamp;
+
+        Players(int online, int max, long timestamp) {
+            this.online = online;
+            this.max = max;
+            this.timestamp = timestamp;
+        }
     }
 
-    public String parseOnlinePlayers(String consoleText) {
-        String[] lines = consoleText.split("\n");
+    /** Снимок TPS за 1, 5 и 15 минут, публикуется целиком. */
+    public static final class Tps {
+        public final double last1m;
+        public final double last5m;
+        public final double last15m;
+        public final long timestamp;
 
-        // Ищем строку с информацией об игроках
-        String matchPhrase = "[Server thread/INFO]: There are ";
-        for (int i = lines.length - 1; i >= 0; i--) { // Пример строки: "There are 2/20 players online:"
-            if (lines[i].contains(matchPhrase)) {
-                String result = lines[i].substring(lines[i].indexOf(matchPhrase) + matchPhrase.length());
-                return result.substring(0, result.indexOf(" "));
-            }
+        Tps(double last1m, double last5m, double last15m, long timestamp) {
+            this.last1m = last1m;
+            this.last5m = last5m;
+            this.last15m = last15m;
+            this.timestamp = timestamp;
         }
-        return "Неизвестно количество";
     }
 
-    public String parseMemory(String consoleText) {
-        String[] lines = consoleText.split("\n");
-        String matchPhrase = "Current Memory Usage: ";
-        for (int i = lines.length - 1; i >= 0; i--) { // Пример строки: "There are 2/20 players online:"
-            if (lines[i].contains(matchPhrase)) {
-                return lines[i].substring(lines[i].indexOf(matchPhrase) + matchPhrase.length());
-            }
-        }
-        return "Неизвестно количество";
-    }
-
-    public String parseTPS(String consoleText) {
-        String[] lines = consoleText.split("\n");
-        for (int i = lines.length - 1; i >= 0; i--) {
-            if (lines[i].contains("TPS")) {
-                // Пример строки: "TPS from last 1m, 5m, 15m: 19.99, 20.00, 20.00"
-                String tpsLine = lines[i];
-                String[] parts = tpsLine.split(":");
-                if (parts.length > 1) {
-                    String[] tpsValues = parts[4].trim().split(",");
-                    if (tpsValues.length >= 3) {
-                        return tpsValues[0].trim();
-                    }
-                }
+    private volatile Players players;
+    private volatile Tps tps;
+    private volatile String memory;
+    private String upTime = null;
+    private long serverStartTime;
+    private final MetricsStore metrics;
+
+    public ServerDataService() {
+        this(null);
+    }
+
+    /**
+     * @param metrics хранилище истории метрик, в которое попадает каждое разобранное значение
+     */
+    public ServerDataService(MetricsStore metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Разбирает очередную строку вывода сервера в байтах. Вызывается из потока чтения процесса.
+     * Строки без маркеров статистики отсекаются без декодирования.
+     * @return true, если строка содержала статистику
+     */
+    public boolean acceptLine(ConsoleLine line) {
+        return line.containsAny(MARKERS) && acceptLine(line.toString());
+    }
+
+    /**
+     * Разбирает очередную строку вывода сервера.
+     * @return true, если строка содержала статистику
+     */
+    public boolean acceptLine(String line) {
+        Matcher m = STATS_PATTERN.matcher(line);
+        if (!m.find()) return false;
+
+        long now = System.currentTimeMillis();
+        try {
+            if (m.group(1) != null) {
+                Players p = new Players(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), now);
+                players = p;
+                record(MetricsStore.Metric.PLAYERS, now, p.online);
+            } else if (m.group(3) != null) {
+                Tps t = new Tps(Double.parseDouble(m.group(3)), Double.parseDouble(m.group(4)),
+                        Double.parseDouble(m.group(5)), now);
+                tps = t;
+                record(MetricsStore.Metric.TPS, now, t.last1m);
+            } else {
+                String value = m.group(6).trim();
+                memory = value;
+                // Первое число в строке памяти - занятая память в МБ
+                Matcher used = LEADING_NUMBER.matcher(value);
+                if (used.find()) record(MetricsStore.Metric.MEMORY_USED_MB, now, Long.parseLong(used.group(1)));
             }
+        } catch (NumberFormatException e) {
+            return false;
         }
-        return "Неизвестно...";
+        return true;
+    }
+
+    private void record(MetricsStore.Metric metric, long timestamp, double value) {
+        if (metrics != null) metrics.record(metric, timestamp, value);
     }
 
     public String calculateUptime() {
@@ -70,38 +134,33 @@ public class ServerDataService {
         return formatDuration(uptimeMillis);
     }
 
-    public void collectStatsData(String consoleText) {
-
-        onlinePlayers = parseOnlinePlayers(consoleText);
-        tps = parseTPS(consoleText);
-        memory = parseMemory(consoleText);
+    public void collectStatsData() {
         upTime = calculateUptime();
     }
 
     //Getters and Setters
 
-    public String getOnlinePlayers() {
-        return onlinePlayers;
-    }
-
-    public void setOnlinePlayers(String onlinePlayers) {
-        this.onlinePlayers = onlinePlayers;
+    public Players getPlayers() {
+        return players;
     }
 
-    public String getTps() {
+    public Tps getTpsValues() {
         return tps;
     }
 
-    public void setTps(String tps) {
-        this.tps = tps;
+    public String getOnlinePlayers() {
+        Players p = players;
+        return p == null ? UNKNOWN : p.online + "/" + p.max;
     }
 
-    public String getMemory() {
-        return memory;
+    public String getTps() {
+        Tps t = tps;
+        return t == null ? UNKNOWN : String.valueOf(t.last1m);
     }
 
-    public void setMemory(String memory) {
-        this.memory = memory;
+    public String getMemory() {
+        String m = memory;
+        return m == null ? UNKNOWN : m;
     }
 
     public long getServerStartTime() {
@@ -119,4 +178,4 @@ public class ServerDataService {
     public void setUpTime(String upTime) {
         this.upTime = upTime;
     }
-}
\ No newline at end of file
+}
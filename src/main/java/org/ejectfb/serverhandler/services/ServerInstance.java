@@ -0,0 +1,613 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+import org.ejectfb.serverhandler.utils.ConsoleLineReader;
+import org.ejectfb.serverhandler.utils.TaskScope;
+import org.ejectfb.serverhandler.utils.TimeSeries;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Один сервер Minecraft под управлением обработчика: свой процесс, статистика, архив консоли
+ * и политика перезапуска. Потоки не создаёт - чтение вывода выполняется в общем пуле ввода-вывода,
+ * а все отложенные задачи в общем планировщике {@link ServerRegistry}.
+ * Не зависит от UI: строки консоли и события передаются слушателю.
+ */
+public class ServerInstance implements AutoCloseable {
+    private static final Duration STATS_RESPONSE_TIMEOUT = Duration.ofSeconds(10);
+    // Сколько ждать выхода сервера после stop, можно переопределить через -Dserver.stopTimeout (секунды)
+    private static final Duration STOP_DEADLINE = Duration.ofSeconds(Integer.getInteger("server.stopTimeout", 60));
+    private static final long JVM_SAMPLE_MILLIS = Long.getLong("jvm.sampleMillis", 1000);
+    // -Dlaunch.autoTune=true применяет подобранные параметры запуска сам
+    private static final boolean AUTO_TUNE = Boolean.getBoolean("launch.autoTune");
+    private static final String PLAYERS_FILE = "players.dat";
+    // Резервные копии миров: -Dbackup.dir - каталог (у каждого сервера свой подкаталог),
+    // -Dbackup.intervalHours - период, пока сервер работает (0 - только по запросу)
+    private static final Path BACKUP_DIR = Path.of(System.getProperty("backup.dir", "backups"));
+    private static final long BACKUP_INTERVAL_HOURS = Long.getLong("backup.intervalHours", 6);
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("win");
+
+    /** Получатель строк консоли и событий экземпляра. Вызывается из фоновых потоков. */
+    public interface Listener {
+        void onLine(ServerInstance instance, ConsoleLine line);
+
+        void onStateChanged(ServerInstance instance, ServerSupervisor.State state);
+
+        void onNotification(ServerInstance instance, String key, String text, NotificationDigest.Priority priority);
+    }
+
+    private final String name;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledExecutorService metricsScheduler;
+    private final ExecutorService ioPool;
+    private final Listener listener;
+    private final ConsoleArchive consoleArchive;
+    private final ConsoleSearch consoleSearch;
+    // Сеансы игроков ведутся по строкам входа и выхода и сохраняются между перезапусками
+    private final PlayerSessionTracker players;
+    private final WorldBackup worldBackup;
+    // Провалы TPS: дампы потоков и JFR снимаются в момент провала и лежат рядом с архивом консоли
+    private final LagSpikeDetector lagDetector;
+    private final LaunchTuner launchTuner;
+    // История метрик сохраняется между перезапусками сервера
+    private final MetricsStore metricsStore = new MetricsStore();
+    private final CommandResponseTracker commandTracker = new CommandResponseTracker(this::sendCommand);
+    private final ServerSupervisor supervisor;
+
+    private volatile String command;
+    private volatile Integer niceLevel;
+    private volatile String cpuAffinity;
+    private volatile int pollIntervalHours = 3;
+    private volatile AlertEngine alertEngine;
+
+    private volatile Process process;
+    // Последняя остановка: её дерево процессов нужно close(), если оболочка уже вышла, а сервер ещё нет
+    private volatile ShutdownSequence shutdownSequence;
+    // stdin процесса; пишет в него только очередь команд
+    private volatile CommandQueue commandQueue;
+    private volatile ServerDataService statsData;
+    private volatile JvmMetricsCollector jvmMetrics;
+    // Задачи и ресурсы текущего запуска, закрываются разом при остановке
+    private TaskScope runScope;
+    private ScheduledFuture<?> statsTask;
+
+    /**
+     * @param name             имя экземпляра, уникальное в реестре
+     * @param archiveDir       каталог архива консоли этого экземпляра
+     * @param launchStatsFile  файл статистики запусков для подбора параметров JVM
+     * @param scheduler        общий планировщик
+     * @param metricsScheduler общий планировщик опроса JVM, отдельный, чтобы медленный JMX не задерживал остальное
+     * @param ioPool           общий пул блокирующего ввода-вывода
+     * @param searchPool       общий пул поиска по архиву консоли
+     * @param listener         получатель строк консоли и событий
+     */
+    ServerInstance(String name, Path archiveDir, Path launchStatsFile, ScheduledExecutorService scheduler,
+                   ScheduledExecutorService metricsScheduler, ExecutorService ioPool, ForkJoinPool searchPool,
+                   Listener listener) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.metricsScheduler = metricsScheduler;
+        this.ioPool = ioPool;
+        this.listener = listener;
+        this.launchTuner = new LaunchTuner(launchStatsFile);
+        this.worldBackup = new WorldBackup(BACKUP_DIR.resolve(name), ioPool, this::log);
+        this.lagDetector = new LagSpikeDetector(archiveDir.resolve("lag"), () -> jvmMetrics, ioPool, this::log,
+                text -> listener.onNotification(this, "lag", text, NotificationDigest.Priority.CRITICAL));
+        // Supervisor вызывает обработчики под своей блокировкой, поэтому запуск и очистка уходят в планировщик
+        this.supervisor = new ServerSupervisor(scheduler, () -> scheduler.execute(this::start),
+                this::onSupervisorStateChanged);
+
+        ConsoleArchive archive = null;
+        ConsoleSearch search = null;
+        try {
+            archive = new ConsoleArchive(archiveDir, ioPool);
+            search = new ConsoleSearch(archive, searchPool);
+        } catch (IOException e) {
+            log("Ошибка открытия архива консоли: " + e.getMessage());
+        }
+        this.consoleArchive = archive;
+        this.consoleSearch = search;
+
+        PlayerSessionTracker tracker;
+        try {
+            tracker = new PlayerSessionTracker(archiveDir.resolve(PLAYERS_FILE), metricsStore);
+        } catch (IOException e) {
+            log("Ошибка открытия журнала игроков, история не сохраняется: " + e.getMessage());
+            tracker = new PlayerSessionTracker(metricsStore);
+        }
+        this.players = tracker;
+    }
+
+    /**
+     * Запускает процесс сервера. Ничего не делает, если сервер уже запущен.
+     */
+    public synchronized void start() {
+        if (isRunning()) return;
+
+        String launchCommand = command;
+        if (launchCommand == null || launchCommand.isEmpty()) {
+            log("Ошибка: команда запуска сервера не указана");
+            return;
+        }
+        supervisor.starting();
+        launchCommand = applyLaunchTuning(launchCommand);
+
+        ServerDataService stats = new ServerDataService(metricsStore);
+        stats.setServerStartTime(System.currentTimeMillis());
+        statsData = stats;
+
+        TaskScope scope = new TaskScope();
+        runScope = scope;
+        try {
+            log("Запуск сервера: " + launchCommand);
+
+            ProcessBuilder pb = new ProcessBuilder(processCommand(launchCommand));
+            pb.redirectErrorStream(true);
+            pb.environment().put("JAVA_TOOL_OPTIONS", "-Dfile.encoding=UTF-8");
+
+            Process started = pb.start();
+            process = started;
+            commandQueue = scope.own(new CommandQueue(
+                    new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8)),
+                    ioPool, command -> log("> " + command), this::log));
+
+            // Асинхронное чтение вывода сервера в общем пуле
+            scope.track(ioPool.submit(() -> readOutput(started, stats)));
+
+            supervisor.attach(started);
+            jvmMetrics = scope.own(new JvmMetricsCollector(metricsScheduler, metricsStore, this::log, JVM_SAMPLE_MILLIS));
+            jvmMetrics.start(started);
+            scheduleStats();
+            scheduleBackups();
+
+            listener.onNotification(this, "start", "✅ Сервер Minecraft запущен", NotificationDigest.Priority.NORMAL);
+        } catch (IOException e) {
+            log("Ошибка при запуске сервера: " + e.getMessage());
+            cleanup();
+            supervisor.startFailed(e.getMessage());
+        }
+    }
+
+    // Приоритет и привязка к ядрам задаются через nice и taskset, которые заменяют себя процессом сервера
+    private List<String> processCommand(String launchCommand) {
+        if (WINDOWS) return List.of("cmd", "/c", launchCommand);
+
+        List<String> args = new ArrayList<>();
+        String cpus = cpuAffinity;
+        Integer nice = niceLevel;
+        if (cpus != null && !cpus.isBlank()) {
+            args.addAll(List.of("taskset", "-c", cpus.trim()));
+        }
+        if (nice != null) {
+            args.addAll(List.of("nice", "-n", String.valueOf(nice)));
+        }
+        args.addAll(List.of("/bin/sh", "-c", launchCommand));
+        return args;
+    }
+
+    // Строки читаются и проверяются в байтах; в String превращаются только те, что кому-то нужны как текст
+    private void readOutput(Process started, ServerDataService stats) {
+        try (InputStream in = started.getInputStream()) {
+            ConsoleLineReader reader = new ConsoleLineReader(in);
+            ConsoleLine line;
+            while ((line = reader.readLine()) != null) {
+                if (stats.acceptLine(line)) lagDetector.acceptTps(stats.getTpsValues());
+                lagDetector.acceptLine(line);
+                players.acceptLine(line);
+                AlertEngine alerts = alertEngine;
+                if (alerts != null) alerts.onLine(this, line);
+                if (commandTracker.hasPending()) commandTracker.onLine(line.toString());
+                publishLine(line);
+            }
+        } catch (IOException e) {
+            if (!String.valueOf(e.getMessage()).contains("Stream closed")) {
+                log("Ошибка чтения вывода: " + e.getMessage());
+            }
+        }
+    }
+
+    // Любая ошибка подбора параметров не должна мешать запуску - тогда используется исходная команда
+    private String applyLaunchTuning(String launchCommand) {
+        try {
+            LaunchProfile profile = LaunchProfile.parse(launchCommand);
+            if (profile == null) return launchCommand;
+
+            LaunchTuner.Recommendation recommendation = launchTuner.recommend(profile);
+            if (!recommendation.hasChanges()) return launchCommand;
+
+            for (String reason : recommendation.reasons) {
+                log("Настройка JVM: " + reason);
+            }
+            String tuned = recommendation.profile.toCommandLine();
+            if (!AUTO_TUNE) {
+                log("Рекомендуемая команда запуска: " + tuned);
+                return launchCommand;
+            }
+            log("Применена команда запуска: " + tuned);
+            command = tuned;
+            return tuned;
+        } catch (IOException e) {
+            log("Ошибка чтения статистики запусков: " + e.getMessage());
+            return launchCommand;
+        } catch (RuntimeException e) {
+            log("Ошибка подбора параметров JVM, команда запуска не изменена: " + e);
+            return launchCommand;
+        }
+    }
+
+    /**
+     * Корректная остановка без автоперезапуска.
+     * @return future, завершающийся true, когда процесс завершился
+     */
+    public CompletableFuture<Boolean> stop() {
+        return shutdown(false);
+    }
+
+    /**
+     * Корректная остановка с немедленным запуском после выхода процесса.
+     */
+    public CompletableFuture<Boolean> restart() {
+        return shutdown(true);
+    }
+
+    private synchronized CompletableFuture<Boolean> shutdown(boolean restart) {
+        Process current = process;
+        if (current == null) {
+            // Процесса нет, но может быть запланирован автоперезапуск - отменяем его
+            if (!restart) supervisor.stopping();
+            return CompletableFuture.completedFuture(true);
+        }
+        if (supervisor.getState() == ServerSupervisor.State.STOPPING) {
+            return current.onExit().thenApply(p -> true);
+        }
+
+        // Очистку ресурсов и перезапуск выполняет supervisor после выхода процесса
+        if (restart) supervisor.restarting();
+        else supervisor.stopping();
+        log(restart ? "Перезапуск сервера..." : "Остановка сервера...");
+
+        ShutdownSequence sequence = new ShutdownSequence(current, this::sendCommand, commandTracker, this::log,
+                STOP_DEADLINE);
+        shutdownSequence = sequence;
+        return sequence.execute()
+                .thenApply(exited -> {
+                    if (exited && !restart) {
+                        listener.onNotification(this, "stop", "⛔ Сервер Minecraft остановлен",
+                                NotificationDigest.Priority.NORMAL);
+                    }
+                    return exited;
+                });
+    }
+
+    private synchronized void cleanup() {
+        JvmMetricsCollector collector = jvmMetrics;
+        if (collector != null) recordLaunchStats(collector.getRunStats());
+        if (runScope != null) runScope.close();
+        runScope = null;
+        statsTask = null;
+        jvmMetrics = null;
+        commandQueue = null;
+        process = null;
+        commandTracker.cancelAll();
+        players.serverStopped(System.currentTimeMillis());
+    }
+
+    private void recordLaunchStats(JvmMetricsCollector.RunStats stats) {
+        try {
+            launchTuner.recordRun(stats);
+        } catch (IOException e) {
+            log("Ошибка сохранения статистики запуска: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Отправляет команду в консоль сервера с приоритетом по умолчанию (stop и save-* - срочные).
+     */
+    public void sendCommand(String serverCommand) {
+        sendCommand(serverCommand, CommandQueue.Lane.of(serverCommand));
+    }
+
+    /**
+     * Ставит команду в очередь на запись в stdin сервера. Не блокирует вызывающий поток.
+     * @return false, если сервер не запущен или очередь переполнена
+     */
+    public boolean sendCommand(String serverCommand, CommandQueue.Lane lane) {
+        CommandQueue queue = commandQueue;
+        if (queue == null) return false;
+        if (!queue.offer(serverCommand, lane)) {
+            log("Команда не отправлена, очередь команд закрыта или переполнена: " + serverCommand);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ставит команды в очередь одной пачкой: они пишутся в stdin подряд, без чужих команд между ними.
+     * @return false, если сервер не запущен или очередь переполнена
+     */
+    public boolean sendCommands(List<String> serverCommands, CommandQueue.Lane lane) {
+        CommandQueue queue = commandQueue;
+        if (queue == null) return false;
+        if (!queue.offer(serverCommands, lane)) {
+            log("Команды не отправлены, очередь команд закрыта или переполнена: " + String.join("; ", serverCommands));
+            return false;
+        }
+        return true;
+    }
+
+    private void onSupervisorStateChanged(ServerSupervisor.State state, String message) {
+        if (message != null) log(message);
+
+        switch (state) {
+            case STOPPED -> scheduler.execute(this::cleanup);
+            case CRASHED -> {
+                scheduler.execute(this::cleanup);
+                listener.onNotification(this, "crash",
+                        "⚠️ Сервер Minecraft упал" + (message != null ? ": " + message : ""),
+                        NotificationDigest.Priority.CRITICAL);
+            }
+            default -> { }
+        }
+        // Через тот же планировщик, чтобы слушатель видел состояние уже после очистки
+        scheduler.execute(() -> listener.onStateChanged(this, state));
+    }
+
+    private synchronized void scheduleStats() {
+        if (runScope == null) return;
+        if (statsTask != null) statsTask.cancel(false);
+        long period = TimeUnit.HOURS.toMillis(pollIntervalHours);
+        statsTask = runScope.track(scheduler.scheduleAtFixedRate(() -> requestStats().thenAccept(stats -> {
+            if (stats != null) listener.onNotification(this, "stats", stats, NotificationDigest.Priority.IMMEDIATE);
+        }), period, period, TimeUnit.MILLISECONDS));
+    }
+
+    private synchronized void scheduleBackups() {
+        if (runScope == null || BACKUP_INTERVAL_HOURS <= 0) return;
+        long period = TimeUnit.HOURS.toMillis(BACKUP_INTERVAL_HOURS);
+        runScope.track(scheduler.scheduleAtFixedRate(this::backup, period, period, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Делает резервную копию миров в пуле ввода-вывода. Пока сервер работает, сохранение на время
+     * последнего прохода копирования выключается командами save-off / save-on.
+     * @return future с итогом; завершается с ошибкой, если копирование не удалось или уже идёт
+     */
+    public CompletableFuture<WorldBackup.Result> backup() {
+        Path worlds = WorldBackup.worldContainer(command);
+        CommandResponseTracker server = isRunning() ? commandTracker : null;
+        return CompletableFuture.supplyAsync(() -> {
+            log("Резервное копирование миров из " + worlds.toAbsolutePath().normalize() + "...");
+            try {
+                return worldBackup.run(worlds, server);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, ioPool).whenComplete((result, error) -> {
+            if (error == null) {
+                log(result.summary());
+                listener.onNotification(this, "backup", "💾 " + result.summary(), NotificationDigest.Priority.NORMAL);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof UncheckedIOException io) cause = io.getCause();
+            log("Ошибка резервного копирования: " + cause.getMessage());
+            if (!(cause instanceof IllegalStateException)) {
+                listener.onNotification(this, "backup", "⚠️ Резервная копия не сделана: " + cause.getMessage(),
+                        NotificationDigest.Priority.CRITICAL);
+            }
+        });
+    }
+
+    /**
+     * Запрашивает у сервера игроков и TPS и собирает текст статистики.
+     * @return future с текстом или null, если сервер не запущен
+     */
+    public CompletableFuture<String> requestStats() {
+        ServerDataService stats = statsData;
+        if (!isRunning() || stats == null) return CompletableFuture.completedFuture(null);
+
+        log("Запрос статистики сервера...");
+        // Игроки известны по строкам входа и выхода, у сервера запрашивается только TPS
+        CompletableFuture<String> tps = awaitResponse("tps",
+                line -> line.contains("TPS from last"));
+
+        return tps.thenApply(v -> {
+            log("Сбор данных статистики...");
+            stats.collectStatsData();
+            return formatStats(stats);
+        });
+    }
+
+    private CompletableFuture<String> awaitResponse(String serverCommand, Predicate<String> response) {
+        return commandTracker.request(serverCommand, response, STATS_RESPONSE_TIMEOUT)
+                .exceptionally(e -> {
+                    if (e instanceof TimeoutException) {
+                        log("Сервер не ответил на команду \"" + serverCommand + "\" за "
+                                + STATS_RESPONSE_TIMEOUT.toSeconds() + " с");
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Число игроков в сети; максимум известен, только если сервер отвечал на list.
+     */
+    private String formatOnline(ServerDataService stats) {
+        ServerDataService.Players reported = stats.getPlayers();
+        return players.getOnlineCount() + (reported != null ? "/" + reported.max : "");
+    }
+
+    private String formatStats(ServerDataService stats) {
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        TimeSeries.Aggregate tpsDay = metricsStore.summary(MetricsStore.Metric.TPS, TimeSeries.HOUR * 24);
+        String tpsTrend = tpsDay == null ? "" : String.format(Locale.ROOT,
+                "\n📉 TPS за 24ч: мин %.2f / ср %.2f / макс %.2f", tpsDay.min, tpsDay.avg, tpsDay.max);
+        JvmMetricsCollector collector = jvmMetrics;
+        JvmMetricsCollector.Snapshot jvm = collector != null ? collector.getLatest() : null;
+        if (jvm != null) {
+            TimeSeries.Aggregate gcMinute = metricsStore.summary(MetricsStore.Metric.GC_TIME_MS, TimeSeries.MINUTE);
+            tpsTrend += String.format(Locale.ROOT,
+                    "\n☕ JVM: heap %d/%d МБ, GC %.0f мс/мин, потоков %d, CPU %.0f%%",
+                    jvm.heapUsedMb, jvm.heapMaxMb,
+                    gcMinute == null ? 0.0 : gcMinute.avg * gcMinute.count,
+                    jvm.threads, Math.max(0, jvm.processCpuLoad) * 100);
+        }
+        return String.format(
+                """
+                        📊 Статистика сервера Minecraft (%s)
+                        🔄 Состояние: работает
+                        🧮 Память: %s
+                        👥 Онлайн: %s игроков (рекорд %d)
+                        ⏱ TPS: %s
+                        ⏳ Время работы: %s%s""",
+                dtf.format(LocalDateTime.now()),
+                stats.getMemory(),
+                formatOnline(stats),
+                players.getPeak(),
+                stats.getTps(),
+                stats.getUpTime(),
+                tpsTrend
+        );
+    }
+
+    /**
+     * Сообщение обработчика в консоль экземпляра. Многострочный текст разбивается на строки.
+     */
+    public void log(String text) {
+        for (String line : text.split("\n", -1)) {
+            publishLine(ConsoleLine.of(line));
+        }
+    }
+
+    private void publishLine(ConsoleLine line) {
+        ConsoleArchive archive = consoleArchive;
+        if (archive != null) archive.append(System.currentTimeMillis(), line);
+        listener.onLine(this, line);
+    }
+
+    public boolean isRunning() {
+        return process != null;
+    }
+
+    @Override
+    public void close() {
+        Process current = process;
+        ShutdownSequence sequence = shutdownSequence;
+        if (current != null) supervisor.stopping();
+        List<ProcessHandle> tree = new ArrayList<>();
+        if (sequence != null) tree.addAll(sequence.aliveTree());
+        if (current != null) tree.addAll(ShutdownSequence.processTree(current.toHandle()));
+        ShutdownSequence.signalTree(tree, false);
+        cleanup();
+        players.close();
+        if (consoleSearch != null) consoleSearch.close();
+        if (consoleArchive != null) consoleArchive.close();
+    }
+
+    //Getters and Setters
+
+    public String getName() {
+        return name;
+    }
+
+    public ServerSupervisor.State getState() {
+        return supervisor.getState();
+    }
+
+    public ServerDataService getStatsData() {
+        return statsData;
+    }
+
+    public MetricsStore getMetricsStore() {
+        return metricsStore;
+    }
+
+    public JvmMetricsCollector getJvmMetrics() {
+        return jvmMetrics;
+    }
+
+    public PlayerSessionTracker getPlayerSessions() {
+        return players;
+    }
+
+    public WorldBackup getWorldBackup() {
+        return worldBackup;
+    }
+
+    public CommandQueue getCommandQueue() {
+        return commandQueue;
+    }
+
+    public ConsoleSearch getConsoleSearch() {
+        return consoleSearch;
+    }
+
+    public ConsoleArchive getConsoleArchive() {
+        return consoleArchive;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public Integer getNiceLevel() {
+        return niceLevel;
+    }
+
+    public void setNiceLevel(Integer niceLevel) {
+        this.niceLevel = niceLevel;
+    }
+
+    public String getCpuAffinity() {
+        return cpuAffinity;
+    }
+
+    public void setCpuAffinity(String cpuAffinity) {
+        this.cpuAffinity = cpuAffinity;
+    }
+
+    public AlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    /**
+     * Правила оповещений по выводу сервера; null отключает оповещения.
+     */
+    public void setAlertEngine(AlertEngine alertEngine) {
+        this.alertEngine = alertEngine;
+    }
+
+    public int getPollIntervalHours() {
+        return pollIntervalHours;
+    }
+
+    public void setPollIntervalHours(int pollIntervalHours) {
+        this.pollIntervalHours = pollIntervalHours;
+        if (isRunning()) scheduleStats();
+    }
+}
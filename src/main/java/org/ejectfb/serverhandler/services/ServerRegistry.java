@@ -0,0 +1,114 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.HandlerThreads;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Реестр серверов одного обработчика (например, прокси и несколько серверов за ним).
+ * Все экземпляры используют один планировщик, один планировщик опроса JVM, один пул ввода-вывода
+ * и один пул поиска по архиву ({@link HandlerThreads}), поэтому число потоков не растёт с количеством
+ * серверов и перезапусков.
+ */
+public class ServerRegistry implements AutoCloseable {
+    private final Path archiveRoot;
+    private final Path launchStatsDir;
+    private final ServerInstance.Listener listener;
+    private final ScheduledExecutorService scheduler = HandlerThreads.newScheduler("server-scheduler");
+    private final ScheduledExecutorService metricsScheduler = HandlerThreads.newScheduler("jvm-metrics");
+    // Блокирующие задачи всех серверов и интерфейсов: чтение процессов, отправка в Telegram, клиенты API
+    private final ExecutorService ioPool = HandlerThreads.newIoExecutor("handler-io");
+    // Поиск по архивам консоли всех серверов
+    private final ForkJoinPool searchPool = HandlerThreads.newCpuPool("console-search");
+    private final Map<String, ServerInstance> instances = new LinkedHashMap<>();
+
+    /**
+     * @param archiveRoot    каталог, в котором каждый сервер получает свой подкаталог архива консоли
+     * @param launchStatsDir каталог файлов статистики запусков
+     * @param listener       получатель строк консоли и событий всех серверов
+     */
+    public ServerRegistry(Path archiveRoot, Path launchStatsDir, ServerInstance.Listener listener) {
+        this.archiveRoot = archiveRoot;
+        this.launchStatsDir = launchStatsDir;
+        this.listener = listener;
+    }
+
+    /**
+     * Создаёт сервер с указанным именем.
+     * @throws IllegalArgumentException если имя пустое, недопустимо для имени каталога или уже занято
+     */
+    public synchronized ServerInstance create(String name) {
+        if (name == null || !name.matches("[\\w.-]+")) {
+            throw new IllegalArgumentException("Недопустимое имя сервера: " + name);
+        }
+        if (instances.containsKey(name)) {
+            throw new IllegalArgumentException("Сервер с именем " + name + " уже существует");
+        }
+
+        ServerInstance instance = new ServerInstance(name, archiveRoot.resolve(name),
+                launchStatsDir.resolve("launch-stats-" + name + ".properties"),
+                scheduler, metricsScheduler, ioPool, searchPool, listener);
+        instances.put(name, instance);
+        return instance;
+    }
+
+    /**
+     * Останавливает процесс сервера и убирает его из реестра.
+     */
+    public synchronized void remove(String name) {
+        ServerInstance instance = instances.remove(name);
+        if (instance != null) instance.close();
+    }
+
+    public synchronized ServerInstance get(String name) {
+        return instances.get(name);
+    }
+
+    public synchronized List<ServerInstance> list() {
+        return new ArrayList<>(instances.values());
+    }
+
+    public synchronized int size() {
+        return instances.size();
+    }
+
+    /**
+     * Общий планировщик для задач, не привязанных к одному серверу.
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Общий пул блокирующего ввода-вывода.
+     */
+    public ExecutorService getIoExecutor() {
+        return ioPool;
+    }
+
+    /**
+     * Закрывает все серверы, оставляя общие пулы работающими - через них ещё уходят последние уведомления.
+     */
+    public synchronized void closeInstances() {
+        for (ServerInstance instance : instances.values()) {
+            instance.close();
+        }
+        instances.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeInstances();
+        scheduler.shutdownNow();
+        metricsScheduler.shutdownNow();
+        ioPool.shutdownNow();
+        searchPool.shutdownNow();
+    }
+}
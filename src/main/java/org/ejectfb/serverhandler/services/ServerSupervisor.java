@@ -0,0 +1,178 @@
+package org.ejectfb.serverhandler.services;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.ejectfb.serverhandler.utils.StringUtils.formatDuration;
+
+/**
+ * Следит за жизненным циклом процесса сервера без активного ожидания:
+ * о завершении процесса сообщает {@link Process#onExit()}.
+ * После падения сервер перезапускается с экспоненциальной задержкой,
+ * а при слишком частых падениях (crash loop) автоперезапуск прекращается.
+ */
+public class ServerSupervisor {
+    public enum State {
+        STOPPED, STARTING, RUNNING, STOPPING, CRASHED, BACKOFF
+    }
+
+    public interface Listener {
+        void onStateChanged(State state, String message);
+    }
+
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(5);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    // Работа дольше этого времени считается стабильной и сбрасывает задержку
+    private static final Duration STABLE_RUN = Duration.ofMinutes(10);
+    // Столько падений за окно считается crash loop
+    private static final int CRASH_LOOP_LIMIT = 5;
+    private static final Duration CRASH_LOOP_WINDOW = Duration.ofMinutes(10);
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable startAction;
+    private final Listener listener;
+
+    private State state = State.STOPPED;
+    private Process process;
+    private long runStartedAt;
+    private int consecutiveCrashes = 0;
+    private boolean restartAfterStop = false;
+    private final Deque<Long> crashTimes = new ArrayDeque<>();
+    private ScheduledFuture<?> pendingRestart;
+
+    /**
+     * @param scheduler   планировщик отложенных перезапусков
+     * @param startAction запускает сервер заново
+     * @param listener    получает уведомления о смене состояния
+     */
+    public ServerSupervisor(ScheduledExecutorService scheduler, Runnable startAction, Listener listener) {
+        this.scheduler = scheduler;
+        this.startAction = startAction;
+        this.listener = listener;
+    }
+
+    public synchronized void starting() {
+        cancelPendingRestart();
+        setState(State.STARTING, null);
+    }
+
+    /**
+     * Начинает наблюдение за запущенным процессом.
+     */
+    public synchronized void attach(Process process) {
+        this.process = process;
+        this.runStartedAt = System.currentTimeMillis();
+        restartAfterStop = false;
+        setState(State.RUNNING, null);
+        process.onExit().thenAccept(this::onExit);
+    }
+
+    /**
+     * Запуск не удался - процесс так и не появился.
+     * Ошибка ручного запуска не повторяется, ошибка автоперезапуска считается падением.
+     */
+    public synchronized void startFailed(String reason) {
+        process = null;
+        if (consecutiveCrashes == 0) {
+            setState(State.STOPPED, null);
+            return;
+        }
+        handleCrash("Не удалось запустить сервер: " + reason);
+    }
+
+    /**
+     * Ручная остановка: после завершения процесса перезапуск не выполняется.
+     */
+    public synchronized void stopping() {
+        cancelPendingRestart();
+        restartAfterStop = false;
+        if (state == State.BACKOFF || state == State.CRASHED) {
+            setState(State.STOPPED, "Автоперезапуск отменён");
+        } else if (state != State.STOPPED) {
+            setState(State.STOPPING, null);
+        }
+    }
+
+    /**
+     * Ручной перезапуск: после завершения процесса сервер сразу запускается снова.
+     */
+    public synchronized void restarting() {
+        stopping();
+        restartAfterStop = true;
+    }
+
+    private synchronized void onExit(Process exited) {
+        // Уведомление от процесса предыдущего запуска
+        if (exited != process) return;
+        process = null;
+
+        if (state == State.STOPPING) {
+            if (restartAfterStop) {
+                restartAfterStop = false;
+                setState(State.STOPPED, "Сервер остановлен, выполняется перезапуск");
+                startAction.run();
+            } else {
+                setState(State.STOPPED, "Сервер был остановлен вручную. Автоперезапуск не выполняется.");
+            }
+            return;
+        }
+
+        if (System.currentTimeMillis() - runStartedAt >= STABLE_RUN.toMillis()) {
+            consecutiveCrashes = 0;
+        }
+        handleCrash("Процесс сервера завершился неожиданно (код " + exited.exitValue() + ")");
+    }
+
+    private void handleCrash(String message) {
+        long now = System.currentTimeMillis();
+        crashTimes.addLast(now);
+        while (!crashTimes.isEmpty() && now - crashTimes.peekFirst() > CRASH_LOOP_WINDOW.toMillis()) {
+            crashTimes.removeFirst();
+        }
+
+        if (crashTimes.size() >= CRASH_LOOP_LIMIT) {
+            setState(State.CRASHED, message + ". Сервер упал " + crashTimes.size() + " раз за "
+                    + formatDuration(CRASH_LOOP_WINDOW.toMillis()) + ", автоперезапуск остановлен");
+            crashTimes.clear();
+            consecutiveCrashes = 0;
+            return;
+        }
+
+        setState(State.CRASHED, message);
+
+        long delay = Math.min(INITIAL_BACKOFF.toMillis() << Math.min(consecutiveCrashes, 20), MAX_BACKOFF.toMillis());
+        consecutiveCrashes++;
+        setState(State.BACKOFF, "Перезапуск через " + formatDuration(delay));
+        pendingRestart = scheduler.schedule(this::restartAfterBackoff, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void restartAfterBackoff() {
+        pendingRestart = null;
+        if (state != State.BACKOFF) return;
+        startAction.run();
+    }
+
+    private void cancelPendingRestart() {
+        if (pendingRestart != null) {
+            pendingRestart.cancel(false);
+            pendingRestart = null;
+        }
+    }
+
+    private void setState(State newState, String message) {
+        state = newState;
+        listener.onStateChanged(newState, message);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveCrashes() {
+        return consecutiveCrashes;
+    }
+}
@@ -0,0 +1,111 @@
+package org.ejectfb.serverhandler.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Настройки одного профиля обработчика: серверы, интервал статистики и Telegram.
+ * Хранятся в {@link SettingsStore}, токен бота - отдельно от остальных настроек.
+ */
+public class Settings {
+    /** Настройки одного сервера. */
+    public static class Server {
+        private final String name;
+        private String command;
+        private Integer niceLevel;
+        private String cpuAffinity;
+
+        public Server(String name) {
+            this.name = name;
+        }
+
+        //Getters and Setters
+        public String getName() {
+            return name;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public void setCommand(String command) {
+            this.command = command;
+        }
+
+        public Integer getNiceLevel() {
+            return niceLevel;
+        }
+
+        public void setNiceLevel(Integer niceLevel) {
+            this.niceLevel = niceLevel;
+        }
+
+        public String getCpuAffinity() {
+            return cpuAffinity;
+        }
+
+        public void setCpuAffinity(String cpuAffinity) {
+            this.cpuAffinity = cpuAffinity;
+        }
+    }
+
+    private int pollIntervalHours = 3;
+    private String telegramToken;
+    private String telegramChatId;
+    private final List<Server> servers = new ArrayList<>();
+
+    /**
+     * Настройки сервера с указанным именем, при отсутствии добавляются.
+     */
+    public Server server(String name) {
+        for (Server server : servers) {
+            if (server.getName().equals(name)) return server;
+        }
+        Server server = new Server(name);
+        servers.add(server);
+        return server;
+    }
+
+    public boolean hasTelegram() {
+        return telegramToken != null && !telegramToken.isEmpty()
+                && telegramChatId != null && !telegramChatId.isEmpty();
+    }
+
+    //Getters and Setters
+    public int getPollIntervalHours() {
+        return pollIntervalHours;
+    }
+
+    public void setPollIntervalHours(int pollIntervalHours) {
+        this.pollIntervalHours = pollIntervalHours;
+    }
+
+    public String getTelegramToken() {
+        return telegramToken;
+    }
+
+    public void setTelegramToken(String telegramToken) {
+        this.telegramToken = telegramToken;
+    }
+
+    public String getTelegramChatId() {
+        return telegramChatId;
+    }
+
+    public void setTelegramChatId(String telegramChatId) {
+        this.telegramChatId = telegramChatId;
+    }
+
+    public List<Server> getServers() {
+        return servers;
+    }
+
+    @Override
+    public String toString() {
+        // Токен в текстовое представление не попадает
+        return "Settings{pollIntervalHours=" + pollIntervalHours + ", telegramChatId=" + telegramChatId
+                + ", telegramToken=" + (Objects.toString(telegramToken, "").isEmpty() ? "нет" : "***")
+                + ", servers=" + servers.stream().map(Server::getName).toList() + "}";
+    }
+}
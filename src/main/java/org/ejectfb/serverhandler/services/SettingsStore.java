@@ -0,0 +1,333 @@
+package org.ejectfb.serverhandler.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище настроек на диске с именованными профилями.
+ * Обычные настройки лежат в settings.properties, токен бота - в secrets.properties
+ * с правами только для владельца, поэтому settings.properties можно показывать и копировать.
+ * <ul>
+ *   <li>Файлы читаются при первом обращении, а не при создании хранилища.</li>
+ *   <li>Запись атомарная: содержимое пишется во временный файл в том же каталоге и переименовывается,
+ *   поэтому при сбое остаётся либо старый, либо новый файл целиком.</li>
+ *   <li>{@link #watch} следит за каталогом через WatchService и сообщает об изменениях файлов,
+ *   сделанных вручную; собственные записи хранилища не считаются изменениями.</li>
+ * </ul>
+ * Ключи: profile=&lt;активный профиль&gt;, profile.&lt;профиль&gt;.pollHours, .telegram.chatId, .servers=a,b,
+ * .server.&lt;имя&gt;.command, .nice, .cpus; в secrets.properties - profile.&lt;профиль&gt;.telegram.token.
+ */
+public class SettingsStore implements AutoCloseable {
+    public static final String DEFAULT_PROFILE = "default";
+    private static final String SETTINGS_FILE = "settings.properties";
+    private static final String SECRETS_FILE = "secrets.properties";
+    // Редакторы сохраняют файл несколькими операциями - перечитываем после паузы
+    private static final long RELOAD_DELAY_MILLIS = 300;
+
+    private final Path dir;
+    // Профиль, заданный при запуске, имеет приоритет над сохранённым в файле
+    private final String profileOverride;
+    private Properties plain;
+    private Properties secrets;
+    private WatchService watchService;
+    private ScheduledFuture<?> pendingReload;
+
+    /**
+     * @param dir             каталог файлов настроек
+     * @param profileOverride профиль, выбранный при запуске, или null для сохранённого в файле
+     */
+    public SettingsStore(Path dir, String profileOverride) {
+        if (profileOverride != null) checkProfileName(profileOverride);
+        this.dir = dir;
+        this.profileOverride = profileOverride;
+    }
+
+    /**
+     * Настройки активного профиля. Если профиль ещё не сохранялся, возвращаются настройки по умолчанию.
+     */
+    public synchronized Settings load() throws IOException {
+        return load(getActiveProfile());
+    }
+
+    public synchronized Settings load(String profile) throws IOException {
+        ensureLoaded();
+        return fromProperties(profile, plain, secrets);
+    }
+
+    /**
+     * Сохраняет настройки в активный профиль.
+     */
+    public synchronized void save(Settings settings) throws IOException {
+        save(getActiveProfile(), settings);
+    }
+
+    /**
+     * Заменяет настройки профиля. Файл секретов перезаписывается только при изменении токена.
+     */
+    public synchronized void save(String profile, Settings settings) throws IOException {
+        checkProfileName(profile);
+        ensureLoaded();
+        Properties newPlain = copy(plain);
+        Properties newSecrets = copy(secrets);
+        toProperties(profile, settings, newPlain, newSecrets);
+
+        Files.createDirectories(dir);
+        if (!newSecrets.equals(secrets)) writeAtomically(dir.resolve(SECRETS_FILE), newSecrets);
+        if (!newPlain.equals(plain)) writeAtomically(dir.resolve(SETTINGS_FILE), newPlain);
+        plain = newPlain;
+        secrets = newSecrets;
+    }
+
+    /**
+     * Имя активного профиля: заданный при запуске или сохранённый в файле.
+     */
+    public synchronized String getActiveProfile() throws IOException {
+        if (profileOverride != null) return profileOverride;
+        ensureLoaded();
+        return plain.getProperty("profile", DEFAULT_PROFILE);
+    }
+
+    /**
+     * Делает профиль активным и запоминает выбор в файле.
+     */
+    public synchronized void setActiveProfile(String profile) throws IOException {
+        checkProfileName(profile);
+        ensureLoaded();
+        if (profile.equals(plain.getProperty("profile", DEFAULT_PROFILE))) return;
+        Properties newPlain = copy(plain);
+        newPlain.setProperty("profile", profile);
+        Files.createDirectories(dir);
+        writeAtomically(dir.resolve(SETTINGS_FILE), newPlain);
+        plain = newPlain;
+    }
+
+    /**
+     * Имена сохранённых профилей по алфавиту.
+     */
+    public synchronized List<String> getProfiles() throws IOException {
+        ensureLoaded();
+        TreeSet<String> profiles = new TreeSet<>();
+        for (Properties properties : List.of(plain, secrets)) {
+            for (String key : properties.stringPropertyNames()) {
+                int dot = key.indexOf('.', "profile.".length());
+                if (key.startsWith("profile.") && dot > 0) profiles.add(key.substring("profile.".length(), dot));
+            }
+        }
+        return new ArrayList<>(profiles);
+    }
+
+    /**
+     * Начинает следить за файлами настроек. При изменении файла извне получатель вызывается
+     * в планировщике с новыми настройками активного профиля. Файл с ошибкой не применяется.
+     * @param watchExecutor пул, в котором ждёт WatchService
+     * @param scheduler     планировщик отложенного перечитывания
+     * @param onChange      получатель новых настроек
+     */
+    public synchronized void watch(Executor watchExecutor, ScheduledExecutorService scheduler,
+                                   Consumer<Settings> onChange) throws IOException {
+        if (watchService != null) return;
+        ensureLoaded();
+        Files.createDirectories(dir);
+        WatchService service = dir.getFileSystem().newWatchService();
+        dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        watchService = service;
+
+        watchExecutor.execute(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    boolean relevant = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || context instanceof Path path && isSettingsFile(path);
+                    }
+                    key.reset();
+                    if (relevant) scheduleReload(scheduler, onChange);
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                // Хранилище закрыто
+            }
+        });
+    }
+
+    private synchronized void scheduleReload(ScheduledExecutorService scheduler, Consumer<Settings> onChange) {
+        if (pendingReload != null) pendingReload.cancel(false);
+        pendingReload = scheduler.schedule(() -> reload(onChange), RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void reload(Consumer<Settings> onChange) {
+        Settings settings;
+        synchronized (this) {
+            try {
+                Properties newPlain = read(dir.resolve(SETTINGS_FILE));
+                Properties newSecrets = read(dir.resolve(SECRETS_FILE));
+                // Собственная запись или сохранение без изменений
+                if (newPlain.equals(plain) && newSecrets.equals(secrets)) return;
+                String profile = profileOverride != null ? profileOverride
+                        : newPlain.getProperty("profile", DEFAULT_PROFILE);
+                settings = fromProperties(profile, newPlain, newSecrets);
+                plain = newPlain;
+                secrets = newSecrets;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Ошибка чтения настроек, изменения не применены: " + e.getMessage());
+                return;
+            }
+        }
+        onChange.accept(settings);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (pendingReload != null) pendingReload.cancel(false);
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия WatchService: " + e.getMessage());
+            }
+            watchService = null;
+        }
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (plain != null) return;
+        Properties loadedPlain = read(dir.resolve(SETTINGS_FILE));
+        secrets = read(dir.resolve(SECRETS_FILE));
+        plain = loadedPlain;
+    }
+
+    private static Settings fromProperties(String profile, Properties plain, Properties secrets) {
+        String base = "profile." + profile + ".";
+        Settings settings = new Settings();
+        String pollHours = plain.getProperty(base + "pollHours");
+        if (pollHours != null) settings.setPollIntervalHours(Integer.parseInt(pollHours.trim()));
+        settings.setTelegramChatId(plain.getProperty(base + "telegram.chatId"));
+        settings.setTelegramToken(secrets.getProperty(base + "telegram.token"));
+
+        String servers = plain.getProperty(base + "servers", "");
+        for (String name : servers.split(",")) {
+            if (name.isBlank()) continue;
+            Settings.Server server = settings.server(name.trim());
+            String prefix = base + "server." + server.getName() + ".";
+            server.setCommand(plain.getProperty(prefix + "command"));
+            String nice = plain.getProperty(prefix + "nice");
+            server.setNiceLevel(nice == null || nice.isBlank() ? null : Integer.valueOf(nice.trim()));
+            server.setCpuAffinity(plain.getProperty(prefix + "cpus"));
+        }
+        return settings;
+    }
+
+    private static void toProperties(String profile, Settings settings, Properties plain, Properties secrets) {
+        String base = "profile." + profile + ".";
+        plain.stringPropertyNames().stream().filter(key -> key.startsWith(base)).forEach(plain::remove);
+        secrets.stringPropertyNames().stream().filter(key -> key.startsWith(base)).forEach(secrets::remove);
+
+        plain.setProperty(base + "pollHours", String.valueOf(settings.getPollIntervalHours()));
+        setIfPresent(plain, base + "telegram.chatId", settings.getTelegramChatId());
+        setIfPresent(secrets, base + "telegram.token", settings.getTelegramToken());
+
+        List<String> names = new ArrayList<>();
+        for (Settings.Server server : settings.getServers()) {
+            names.add(server.getName());
+            String prefix = base + "server." + server.getName() + ".";
+            setIfPresent(plain, prefix + "command", server.getCommand());
+            setIfPresent(plain, prefix + "nice", server.getNiceLevel() == null ? null : server.getNiceLevel().toString());
+            setIfPresent(plain, prefix + "cpus", server.getCpuAffinity());
+        }
+        plain.setProperty(base + "servers", String.join(",", names));
+    }
+
+    private static void setIfPresent(Properties properties, String key, String value) {
+        if (value != null && !value.isEmpty()) properties.setProperty(key, value);
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            // Настройки ещё не сохранялись
+        }
+        return properties;
+    }
+
+    /**
+     * Пишет свойства во временный файл, сбрасывает его на диск и переименовывает поверх целевого.
+     * Временный файл создаётся с правами только для владельца - так и остаётся файл секретов.
+     * Используется и другими файлами состояния обработчика (статистика запусков).
+     */
+    static void writeAtomically(Path target, Properties properties) throws IOException {
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer data = ByteBuffer.wrap(format(properties).getBytes(StandardCharsets.UTF_8));
+                while (data.hasRemaining()) channel.write(data);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Свойства в текстовом виде с ключами по алфавиту, без даты - чтобы файл было удобно сравнивать.
+     */
+    private static String format(Properties properties) throws IOException {
+        StringWriter writer = new StringWriter();
+        properties.store(writer, null);
+        String[] lines = writer.toString().lines().filter(line -> !line.startsWith("#")).toArray(String[]::new);
+        Arrays.sort(lines);
+        StringBuilder sb = new StringBuilder("# Настройки Minecraft Server Handler\n");
+        for (String line : lines) sb.append(line).append('\n');
+        return sb.toString();
+    }
+
+    private static Properties copy(Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    private static boolean isSettingsFile(Path name) {
+        return name.toString().equals(SETTINGS_FILE) || name.toString().equals(SECRETS_FILE);
+    }
+
+    private static void checkProfileName(String profile) {
+        if (profile == null || !profile.matches("[\\w-]+")) {
+            throw new IllegalArgumentException("Недопустимое имя профиля: " + profile);
+        }
+    }
+}
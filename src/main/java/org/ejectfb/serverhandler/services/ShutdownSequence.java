@@ -0,0 +1,163 @@
+package org.ejectfb.serverhandler.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Асинхронная корректная остановка сервера:
+ * save-all -> ожидание "Saved the game" -> stop -> ожидание завершения процесса,
+ * затем при необходимости SIGTERM и SIGKILL. Каждый этап замеряется и попадает в лог.
+ * Ни один этап не блокирует вызывающий поток, а результат готов сразу после выхода процесса.
+ */
+public class ShutdownSequence {
+    private static final Duration SAVE_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration TERM_TIMEOUT = Duration.ofSeconds(15);
+    private static final Duration KILL_TIMEOUT = Duration.ofSeconds(5);
+
+    private final Process process;
+    private final Consumer<String> sender;
+    private final CommandResponseTracker tracker;
+    private final Consumer<String> log;
+    private final Duration stopDeadline;
+    // Читается и из ServerInstance.close(), если обработчик закрывается во время остановки
+    private final List<ProcessHandle> tree = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param process      процесс сервера
+     * @param sender       отправляет команду серверу
+     * @param tracker      трекер ответов сервера на команды
+     * @param log          получает отчёт о ходе остановки
+     * @param stopDeadline сколько ждать завершения после команды stop до эскалации
+     */
+    public ShutdownSequence(Process process, Consumer<String> sender, CommandResponseTracker tracker,
+                            Consumer<String> log, Duration stopDeadline) {
+        this.process = process;
+        this.sender = sender;
+        this.tracker = tracker;
+        this.log = log;
+        this.stopDeadline = stopDeadline;
+    }
+
+    /**
+     * Запускает остановку.
+     * @return future, завершающийся true, если процесс завершился, и false, если его не удалось убить
+     */
+    public CompletableFuture<Boolean> execute() {
+        long started = System.nanoTime();
+        // Потомки запоминаются заранее: после выхода оболочки их уже не найти через process.descendants()
+        tree.addAll(processTree(process.toHandle()));
+        return saveWorld()
+                .thenCompose(v -> stage("stop", alive -> sender.accept("stop"), stopDeadline))
+                .thenCompose(exited -> exited ? done() : stage("SIGTERM", alive -> signalTree(alive, false), TERM_TIMEOUT))
+                .thenCompose(exited -> exited ? done() : stage("SIGKILL", alive -> signalTree(alive, true), KILL_TIMEOUT))
+                .thenApply(exited -> {
+                    log.accept((exited ? "Сервер остановлен за " : "Не удалось остановить сервер за ")
+                            + elapsedMillis(started) + " мс");
+                    return exited;
+                });
+    }
+
+    private CompletableFuture<Void> saveWorld() {
+        if (!process.isAlive()) return CompletableFuture.completedFuture(null);
+
+        long started = System.nanoTime();
+        return tracker.request("save-all", line -> line.contains("Saved the game"), SAVE_TIMEOUT)
+                .handle((line, error) -> {
+                    if (error == null) {
+                        log.accept("save-all: мир сохранён за " + elapsedMillis(started) + " мс");
+                    } else {
+                        log.accept("save-all: сохранение не подтверждено за " + elapsedMillis(started) + " мс");
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * @param action получает живые процессы дерева, включая потомков, уже отделившихся от оболочки
+     */
+    private CompletableFuture<Boolean> stage(String name, Consumer<List<ProcessHandle>> action, Duration timeout) {
+        List<ProcessHandle> alive = aliveTree();
+        if (alive.isEmpty()) return done();
+
+        long started = System.nanoTime();
+        action.accept(alive);
+        // Завершиться должен сам сервер, а не только оболочка, через которую он запущен
+        return CompletableFuture.allOf(alive.stream().map(ProcessHandle::onExit).toArray(CompletableFuture<?>[]::new))
+                .thenApply(v -> true)
+                .completeOnTimeout(false, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(exited -> {
+                    log.accept(name + (exited ? ": процесс завершился за " : ": процесс не завершился за ")
+                            + elapsedMillis(started) + " мс");
+                    return exited;
+                });
+    }
+
+    /**
+     * Живые процессы дерева: запомненные при запуске остановки и текущие потомки. Корень - последним.
+     */
+    List<ProcessHandle> aliveTree() {
+        Set<ProcessHandle> handles = new LinkedHashSet<>(tree);
+        if (process.isAlive()) handles.addAll(processTree(process.toHandle()));
+        handles.remove(process.toHandle());
+        handles.add(process.toHandle());
+        List<ProcessHandle> alive = new ArrayList<>();
+        for (ProcessHandle handle : handles) {
+            if (handle.isAlive()) alive.add(handle);
+        }
+        return alive;
+    }
+
+    /**
+     * Процесс и все его потомки, самые глубокие первыми.
+     */
+    static List<ProcessHandle> processTree(ProcessHandle root) {
+        List<ProcessHandle> handles = new ArrayList<>(root.descendants().toList());
+        Map<Long, Integer> depths = new HashMap<>();
+        for (ProcessHandle handle : handles) depths.put(handle.pid(), depth(handle, root.pid()));
+        handles.sort(Comparator.comparingInt((ProcessHandle handle) -> depths.get(handle.pid())).reversed());
+        handles.add(root);
+        return handles;
+    }
+
+    private static int depth(ProcessHandle handle, long rootPid) {
+        int depth = 0;
+        Optional<ProcessHandle> parent = handle.parent();
+        while (parent.isPresent() && parent.get().pid() != rootPid && depth < 64) {
+            depth++;
+            parent = parent.get().parent();
+        }
+        return depth;
+    }
+
+    /**
+     * Посылает SIGTERM (или SIGKILL) серверу и всем процессам между ним и обработчиком.
+     * Сервер запускается через /bin/sh -c, nice и taskset, поэтому прямой потомок - лишь оболочка,
+     * и сигнал только ей оставил бы java-процесс работать с открытыми файлами мира.
+     * Дерево передаётся уже собранным: после выхода оболочки java-процесс не найти среди её потомков.
+     */
+    static void signalTree(List<ProcessHandle> tree, boolean force) {
+        for (ProcessHandle handle : tree) {
+            if (force) handle.destroyForcibly();
+            else handle.destroy();
+        }
+    }
+
+    private static CompletableFuture<Boolean> done() {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+}
@@ -1,22 +1,67 @@
 package org.ejectfb.serverhandler.services;
 
-import org.jetbrains.annotations.NotNull;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.ejectfb.serverhandler.utils.StringUtils.escapeJson;
+
+/**
+ * Отправка сообщений в Telegram через одно общее соединение HttpClient (keep-alive).
+ * Сообщения складываются в ограниченную очередь и отправляются по одному
+ * единственной задачей в общем пуле ввода-вывода с соблюдением лимитов Bot API (retry_after).
+ */
+public class TelegramBotService implements AutoCloseable {
+    // Один клиент на всё приложение - соединения и TLS-сессии переиспользуются
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private static final int QUEUE_CAPACITY = 100;
+    private static final int MAX_ATTEMPTS = 5;
+    // Telegram допускает около одного сообщения в секунду в один чат
+    private static final long MIN_INTERVAL_MILLIS = 1000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+    private static final Pattern RETRY_AFTER = Pattern.compile("\"retry_after\"\\s*:\\s*(\\d+)");
 
-public class TelegramBotService {
     private final String botToken;
     private final String chatId;
+    // Метка конца очереди при закрытии: сравнивается по ссылке
+    private static final String END_OF_OUTBOX = new String("");
 
-    public TelegramBotService(String botToken, String chatId) {
+    private final BlockingQueue<String> outbox = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Future<?> worker;
+    private long lastSentAt = 0;
+
+    /**
+     * @param executor пул, в котором работает задача отправки
+     */
+    public TelegramBotService(String botToken, String chatId, ExecutorService executor) {
         this.botToken = botToken;
         this.chatId = chatId;
+        this.worker = executor.submit(this::drainOutbox);
+    }
+
+    public String getBotToken() {
+        return botToken;
+    }
+
+    public String getChatId() {
+        return chatId;
     }
 
     public boolean isBotConnected() {
@@ -28,43 +73,97 @@ public class TelegramBotService {
         }
     }
 
+    /**
+     * Ставит сообщение в очередь на отправку. Не блокирует вызывающий поток.
+     * Если очередь переполнена, самое старое сообщение отбрасывается.
+     */
     public void sendMessage(String message) {
-        new Thread(() -> {
+        while (!outbox.offer(message)) {
+            String dropped = outbox.poll();
+            if (dropped != null) {
+                System.err.println("Очередь Telegram переполнена, сообщение отброшено: " + dropped);
+            }
+        }
+    }
+
+    /**
+     * Прекращает отправку сразу, неотправленные сообщения теряются.
+     */
+    @Override
+    public void close() {
+        worker.cancel(true);
+    }
+
+    /**
+     * Отправляет уже поставленные в очередь сообщения, ожидая не дольше timeout, и прекращает работу.
+     */
+    public void close(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            if (outbox.offer(END_OF_OUTBOX, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                worker.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | CancellationException e) {
+            System.err.println("Не все сообщения Telegram отправлены до закрытия: " + outbox.size() + " в очереди");
+        } finally {
+            worker.cancel(true);
+        }
+    }
+
+    private void drainOutbox() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                String message = outbox.take();
+                if (message == END_OF_OUTBOX) return;
+                deliver(message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(String message) throws InterruptedException {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long wait = lastSentAt + MIN_INTERVAL_MILLIS - System.currentTimeMillis();
+            if (wait > 0) Thread.sleep(wait);
+
             try {
-                HttpURLConnection conn = getHttpURLConnection(message);
-
-                try (BufferedReader br = new BufferedReader(
-                        new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                    StringBuilder response = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        response.append(responseLine.trim());
-                    }
+                HttpResponse<String> response = HTTP_CLIENT.send(buildRequest(message),
+                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                lastSentAt = System.currentTimeMillis();
+
+                if (response.statusCode() == 200) return;
+
+                if (response.statusCode() == 429) {
+                    // Превышен лимит - ждём столько, сколько попросил Telegram, и пробуем снова
+                    Matcher m = RETRY_AFTER.matcher(response.body());
+                    long retryAfter = m.find() ? Long.parseLong(m.group(1)) : 1;
+                    Thread.sleep(retryAfter * 1000);
+                    continue;
                 }
+
+                System.err.println("Telegram вернул ошибку " + response.statusCode() + ": " + response.body());
+                if (response.statusCode() < 500) return;
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        }).start();
+            Thread.sleep(attempt * 1000L);
+        }
     }
 
-    private HttpURLConnection getHttpURLConnection(String text) throws IOException {
-        String urlString = "https://api.telegram.org/bot" + botToken + "/sendMessage";
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-
+    private HttpRequest buildRequest(String text) {
         String jsonInputString = String.format(
                 "{\"chat_id\": \"%s\", \"text\": \"%s\"}",
-                chatId,
-                text.replace("\"", "\\\"")
+                escapeJson(chatId),
+                escapeJson(text)
         );
 
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = jsonInputString.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        }
-        return conn;
+        return HttpRequest.newBuilder(URI.create("https://api.telegram.org/bot" + botToken + "/sendMessage"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonInputString, StandardCharsets.UTF_8))
+                .build();
     }
-}
\ No newline at end of file
+}
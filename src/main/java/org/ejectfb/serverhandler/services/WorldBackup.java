@@ -0,0 +1,372 @@
+package org.ejectfb.serverhandler.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Резервные копии миров сервера.
+ * Каждый снимок - полный каталог миров в &lt;каталог&gt;/&lt;дата_время&gt;, но записываются только изменившиеся
+ * файлы: файлы с тем же размером и временем изменения, что в предыдущем снимке, становятся жёсткими ссылками
+ * на него. Копирование идёт в два прохода: первый при включённом сохранении переносит основную массу изменений,
+ * второй после save-off и save-all flush докопирует только то, что сервер записал за это время.
+ * Поэтому сохранение выключено секунды, а не всё время копирования.
+ */
+public class WorldBackup {
+    // Сколько снимков хранить, -Dbackup.keep
+    private static final int KEEP = Integer.getInteger("backup.keep", 24);
+    // Сколько файлов копируется одновременно, -Dbackup.threads
+    private static final int THREADS = Integer.getInteger("backup.threads", 4);
+    // save-all flush на большом мире идёт долго, -Dbackup.saveTimeout задаёт ожидание в секундах
+    private static final Duration SAVE_TIMEOUT = Duration.ofSeconds(Long.getLong("backup.saveTimeout", 300));
+    private static final Duration COMMAND_TIMEOUT = Duration.ofSeconds(30);
+    private static final String SAVING_ALREADY_OFF = "Saving is already turned off";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final DateTimeFormatter SNAPSHOT_NAME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").withZone(ZoneId.systemDefault());
+    // Каталог миров в команде запуска Bukkit: --world-dir, --world-container, --universe или -W
+    private static final Pattern WORLD_DIR = Pattern.compile(
+            "(?:^|\\s)(?:--(?:world-dir|world-container|universe)[=\\s]+|-W\\s*)(\"[^\"]+\"|\\S+)");
+
+    /** Итог одного резервного копирования. */
+    public static final class Result {
+        public final Path snapshot;
+        public final int files;
+        public final int copied;
+        public final long bytesCopied;
+        public final long pausedMillis;
+        public final long totalMillis;
+
+        Result(Path snapshot, int files, int copied, long bytesCopied, long pausedMillis, long totalMillis) {
+            this.snapshot = snapshot;
+            this.files = files;
+            this.copied = copied;
+            this.bytesCopied = bytesCopied;
+            this.pausedMillis = pausedMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        public String summary() {
+            return String.format(Locale.ROOT,
+                    "Резервная копия %s: файлов %d, скопировано %d (%.1f МБ), сохранение выключено %.1f с, всего %.1f с",
+                    snapshot.getFileName(), files, copied, bytesCopied / 1048576.0,
+                    pausedMillis / 1000.0, totalMillis / 1000.0);
+        }
+    }
+
+    /** Счётчики одного прохода. */
+    private static final class Pass {
+        final Set<Path> seen = new HashSet<>();
+        final AtomicInteger copied = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+    }
+
+    private final Path root;
+    private final Executor ioPool;
+    private final Consumer<String> log;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @param root   каталог снимков этого сервера
+     * @param ioPool пул, в котором копируются файлы
+     * @param log    вывод сообщений в консоль экземпляра
+     */
+    public WorldBackup(Path root, Executor ioPool, Consumer<String> log) {
+        this.root = root;
+        this.ioPool = ioPool;
+        this.log = log;
+    }
+
+    /**
+     * Каталог миров из команды запуска; без явного параметра миры лежат в рабочем каталоге.
+     */
+    public static Path worldContainer(String launchCommand) {
+        if (launchCommand != null) {
+            Matcher m = WORLD_DIR.matcher(launchCommand);
+            if (m.find()) return Path.of(m.group(1).replace("\"", ""));
+        }
+        return Path.of(".");
+    }
+
+    /**
+     * Делает снимок миров. Блокирует вызывающий поток до конца копирования.
+     * @param container каталог, в подкаталогах которого лежат миры (с level.dat)
+     * @param server    ответы запущенного сервера на команды или null, если сервер остановлен и файлы не меняются
+     * @throws IllegalStateException если копирование уже идёт
+     */
+    public Result run(Path container, CommandResponseTracker server) throws IOException {
+        if (!running.compareAndSet(false, true)) throw new IllegalStateException("Резервное копирование уже идёт");
+        try {
+            long started = System.nanoTime();
+            List<Path> worlds = findWorlds(container);
+            if (worlds.isEmpty()) throw new NoSuchFileException(container.toAbsolutePath() + ": миры не найдены");
+
+            Files.createDirectories(root);
+            deletePartial();
+            Path previous = latestSnapshot();
+            Path target = root.resolve(SNAPSHOT_NAME.format(Instant.now()) + PARTIAL_SUFFIX);
+            Files.createDirectories(target);
+
+            // Первый проход при работающем сохранении: файлы могут меняться, изменённые докопирует второй
+            Pass pass = sync(container, worlds, previous, target);
+            int copied = pass.copied.get();
+            long bytes = pass.bytes.get();
+            long paused = 0;
+            if (server != null) {
+                log.accept("Резервная копия: скопировано " + copied + " файлов, выключение сохранения...");
+                long pauseStarted = System.nanoTime();
+                // Если сохранение выключил оператор, копирование не должно его включать.
+                // Без ответа на save-off состояние неизвестно - тогда сохранение включается
+                boolean resume = true;
+                try {
+                    String reply = await(server.request("save-off",
+                            line -> line.contains("Automatic saving is now disabled") || line.contains(SAVING_ALREADY_OFF),
+                            COMMAND_TIMEOUT), "save-off");
+                    resume = !reply.contains(SAVING_ALREADY_OFF);
+                    await(server.request("save-all flush", line -> line.contains("Saved the game"), SAVE_TIMEOUT),
+                            "save-all flush");
+                    pass = sync(container, worlds, null, target);
+                } finally {
+                    if (resume) resumeSaving(server);
+                    else log.accept("Резервная копия: сохранение мира было выключено до копирования и остаётся выключенным");
+                    paused = (System.nanoTime() - pauseStarted) / 1_000_000;
+                }
+                copied += pass.copied.get();
+                bytes += pass.bytes.get();
+            }
+            removeDeleted(target, pass.seen);
+
+            Path snapshot = root.resolve(target.getFileName().toString().replace(PARTIAL_SUFFIX, ""));
+            Files.move(target, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            prune();
+            return new Result(snapshot, pass.seen.size(), copied, bytes, paused,
+                    (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private static List<Path> findWorlds(Path container) throws IOException {
+        List<Path> worlds = new ArrayList<>();
+        if (!Files.isDirectory(container)) return worlds;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(container, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                if (Files.isRegularFile(dir.resolve("level.dat"))) worlds.add(dir);
+            }
+        }
+        return worlds;
+    }
+
+    /**
+     * Приводит target к текущему состоянию миров. Файл пропускается, если в target он уже такой же;
+     * если такой же в предыдущем снимке - на него ставится жёсткая ссылка; иначе копируется.
+     */
+    private Pass sync(Path container, List<Path> worlds, Path previous, Path target) throws IOException {
+        Pass pass = new Pass();
+        List<Path> changed = new ArrayList<>();
+        List<FileTime> modified = new ArrayList<>();
+        for (Path world : worlds) {
+            try (Stream<Path> files = Files.walk(world)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    // session.lock сервер держит открытым, в копии он не нужен
+                    if (!attrs.isRegularFile() || file.getFileName().toString().equals("session.lock")) continue;
+
+                    Path relative = container.relativize(file);
+                    pass.seen.add(relative);
+                    Path destination = target.resolve(relative);
+                    if (same(destination, attrs)) continue;
+                    if (previous != null && same(previous.resolve(relative), attrs)
+                            && link(destination, previous.resolve(relative))) continue;
+                    changed.add(relative);
+                    modified.add(attrs.lastModifiedTime());
+                }
+            }
+        }
+
+        Semaphore slots = new Semaphore(THREADS);
+        List<CompletableFuture<Void>> copies = new ArrayList<>(changed.size());
+        for (int i = 0; i < changed.size(); i++) {
+            Path relative = changed.get(i);
+            FileTime time = modified.get(i);
+            slots.acquireUninterruptibly();
+            copies.add(CompletableFuture.runAsync(() -> {
+                try {
+                    long size = copy(container.resolve(relative), target.resolve(relative), time);
+                    pass.copied.incrementAndGet();
+                    pass.bytes.addAndGet(size);
+                } catch (NoSuchFileException e) {
+                    // Файл удалён сервером между обходом и копированием
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    slots.release();
+                }
+            }, ioPool));
+        }
+        try {
+            CompletableFuture.allOf(copies.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+        return pass;
+    }
+
+    private static boolean same(Path file, BasicFileAttributes source) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attrs.size() == source.size() && attrs.lastModifiedTime().equals(source.lastModifiedTime());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static boolean link(Path link, Path existing) throws IOException {
+        Files.createDirectories(link.getParent());
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // Файловая система без жёстких ссылок - файл просто копируется
+            return false;
+        }
+    }
+
+    /**
+     * Копирует файл через FileChannel.transferTo (без буфера в куче, на Linux - copy_file_range/sendfile)
+     * во временный файл и заменяет им назначение. Замена, а не запись поверх, не трогает
+     * жёсткую ссылку на предыдущий снимок. Время изменения ставится то, что было до копирования:
+     * если файл меняли во время копирования, следующий проход увидит разницу и скопирует его снова.
+     */
+    private static long copy(Path source, Path destination, FileTime modified) throws IOException {
+        Files.createDirectories(destination.getParent());
+        Path temp = destination.resolveSibling(destination.getFileName() + ".tmp");
+        long position = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                // Файл укоротили во время копирования
+                if (transferred <= 0) break;
+                position += transferred;
+            }
+        }
+        Files.setLastModifiedTime(temp, modified);
+        Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING);
+        return position;
+    }
+
+    // Файлы, которые сервер удалил между проходами
+    private static void removeDeleted(Path target, Set<Path> seen) throws IOException {
+        try (Stream<Path> files = Files.walk(target)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) && !seen.contains(target.relativize(file))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void resumeSaving(CommandResponseTracker server) {
+        try {
+            await(server.request("save-on", line -> line.contains("Automatic saving is now enabled")
+                    || line.contains("Saving is already turned on"), COMMAND_TIMEOUT), "save-on");
+        } catch (IOException e) {
+            log.accept("Ошибка: " + e.getMessage() + ", сохранение мира может остаться выключенным");
+        }
+    }
+
+    // Ответ сервера на команду
+    private static String await(CompletableFuture<String> response, String command) throws IOException {
+        try {
+            return response.get();
+        } catch (ExecutionException e) {
+            throw new IOException("сервер не подтвердил \"" + command + "\"", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("ожидание \"" + command + "\" прервано", e);
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                if (!dir.getFileName().toString().endsWith(PARTIAL_SUFFIX)) snapshots.add(dir);
+            }
+        }
+        // Имена - дата и время, поэтому сортировка по имени хронологическая
+        snapshots.sort(Comparator.comparing(dir -> dir.getFileName().toString()));
+        return snapshots;
+    }
+
+    private Path latestSnapshot() throws IOException {
+        List<Path> snapshots = snapshots();
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    private void prune() throws IOException {
+        List<Path> snapshots = snapshots();
+        for (int i = 0; i < snapshots.size() - KEEP; i++) {
+            deleteTree(snapshots.get(i));
+        }
+    }
+
+    // Незавершённые снимки после сбоя или остановки обработчика во время копирования
+    private void deletePartial() throws IOException {
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, "*" + PARTIAL_SUFFIX)) {
+            for (Path dir : dirs) deleteTree(dir);
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
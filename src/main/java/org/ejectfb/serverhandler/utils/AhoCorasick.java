@@ -0,0 +1,138 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Автомат Ахо-Корасик для поиска многих образцов за один проход по байтам строки.
+ * Переходы достроены до полной таблицы (DFA), поэтому на каждый байт приходится одно обращение
+ * к массиву независимо от числа образцов. Образцы ищутся в байтах UTF-8, строка не декодируется.
+ * После построения автомат неизменяем и может использоваться из многих потоков.
+ */
+public class AhoCorasick {
+    private static final int[] NONE = new int[0];
+
+    // Переход из состояния s по байту b: delta[(s << 8) | b]
+    private final int[] delta;
+    // Номера образцов, заканчивающихся в состоянии (с учётом суффиксных ссылок), или null
+    private final int[][] outputs;
+    private final int patternCount;
+
+    public AhoCorasick(List<byte[]> patterns) {
+        this.patternCount = patterns.size();
+
+        // Бор
+        List<int[]> trie = new ArrayList<>();
+        List<int[]> terminal = new ArrayList<>();
+        trie.add(newRow());
+        terminal.add(null);
+        for (int p = 0; p < patterns.size(); p++) {
+            byte[] pattern = patterns.get(p);
+            if (pattern.length == 0) throw new IllegalArgumentException("Пустой образец: " + p);
+            int state = 0;
+            for (byte b : pattern) {
+                int next = trie.get(state)[b & 0xFF];
+                if (next < 0) {
+                    next = trie.size();
+                    trie.get(state)[b & 0xFF] = next;
+                    trie.add(newRow());
+                    terminal.add(null);
+                }
+                state = next;
+            }
+            terminal.set(state, append(terminal.get(state), p));
+        }
+
+        // Суффиксные ссылки обходом в ширину, заодно достраиваем переходы
+        int states = trie.size();
+        int[] fail = new int[states];
+        this.delta = new int[states << 8];
+        this.outputs = new int[states][];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < 256; b++) {
+            int next = trie.get(0)[b];
+            if (next < 0) {
+                delta[b] = 0;
+            } else {
+                delta[b] = next;
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        outputs[0] = terminal.get(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = merge(terminal.get(state), outputs[fail[state]]);
+            int[] row = trie.get(state);
+            for (int b = 0; b < 256; b++) {
+                int next = row[b];
+                if (next < 0) {
+                    delta[(state << 8) | b] = delta[(fail[state] << 8) | b];
+                } else {
+                    delta[(state << 8) | b] = next;
+                    fail[next] = delta[(fail[state] << 8) | b];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Номера всех образцов, встречающихся в тексте, без повторов.
+     * Если совпадений нет, память не выделяется.
+     */
+    public int[] matchAll(byte[] text) {
+        int[] found = NONE;
+        int count = 0;
+        int state = 0;
+        for (byte b : text) {
+            state = delta[(state << 8) | (b & 0xFF)];
+            int[] out = outputs[state];
+            if (out == null) continue;
+            for (int pattern : out) {
+                if (indexOf(found, count, pattern) >= 0) continue;
+                if (count == found.length) found = Arrays.copyOf(found, Math.max(4, count * 2));
+                found[count++] = pattern;
+            }
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public int getStateCount() {
+        return outputs.length;
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[256];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null) return new int[] {value};
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static int[] merge(int[] own, int[] inherited) {
+        if (own == null) return inherited;
+        if (inherited == null) return own;
+        int[] result = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, result, own.length, inherited.length);
+        return result;
+    }
+
+    private static int indexOf(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Простой фильтр Блума для строк: отвечает "точно нет" или "возможно есть".
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final int mask;
+    private final int hashes;
+
+    /**
+     * @param log2Bits логарифм размера в битах (20 - 128 КБ)
+     * @param hashes   количество хеш-функций
+     */
+    public BloomFilter(int log2Bits, int hashes) {
+        this.bits = new long[Math.max(1, (1 << log2Bits) >>> 6)];
+        this.mask = (1 << log2Bits) - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Читает фильтр, сохранённый {@link #writeTo}.
+     */
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        BloomFilter filter = new BloomFilter(in.readInt(), in.readInt());
+        for (int i = 0; i < filter.bits.length; i++) {
+            filter.bits[i] = in.readLong();
+        }
+        return filter;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(Integer.numberOfTrailingZeros(mask + 1));
+        out.writeInt(hashes);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Размер данных, которые пишет {@link #writeTo}.
+     */
+    public int sizeInBytes() {
+        return 8 + bits.length * 8;
+    }
+
+    public void add(String value) {
+        int h1 = value.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String value) {
+        int h1 = value.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    // Второй хеш из первого (финализатор MurmurHash3), нечётный, чтобы шаг не вырождался
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
@@ -0,0 +1,93 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Кольцевой буфер строк консоли фиксированной ёмкости.
+ * Добавление и вытеснение самой старой строки выполняются за O(1),
+ * поэтому ёмкость можно делать сколь угодно большой без потерь на каждую строку.
+ * Класс не потокобезопасен: используется из одного потока (FX).
+ * @param <T> тип строки (String или {@link ConsoleLine})
+ */
+public class ConsoleBuffer<T> {
+    private final Object[] lines;
+    private int head = 0; // индекс самой старой строки
+    private int size = 0;
+    private long totalAppended = 0;
+
+    public ConsoleBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity должен быть больше 0");
+        this.lines = new Object[capacity];
+    }
+
+    /**
+     * Добавляет строку в конец буфера.
+     * @return вытесненная строка или null, если место ещё было
+     */
+    public T add(T line) {
+        T evicted = null;
+        int tail = (head + size) % lines.length;
+        if (size == lines.length) {
+            evicted = element(head);
+            head = (head + 1) % lines.length;
+        } else {
+            size++;
+        }
+        lines[tail] = line;
+        totalAppended++;
+        return evicted;
+    }
+
+    /**
+     * Возвращает строку по логическому индексу, где 0 - самая старая строка.
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return element((head + index) % lines.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T element(int slot) {
+        return (T) lines[slot];
+    }
+
+    /**
+     * Копирует первые count строк (самые старые) - нужно, чтобы сообщить об их вытеснении.
+     */
+    public List<T> oldest(int count) {
+        int n = Math.min(count, size);
+        List<T> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return lines.length;
+    }
+
+    public long getTotalAppended() {
+        return totalAppended;
+    }
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(get(i)).append('\n');
+        }
+        return sb.toString();
+    }
+}
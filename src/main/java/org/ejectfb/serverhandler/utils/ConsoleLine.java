@@ -0,0 +1,103 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Строка консоли в виде байтов UTF-8 с ленивым декодированием.
+ * Строки вывода сервера хранятся как байты: их пишет архив, по ним ищутся маркеры статистики,
+ * а в String строка превращается только при показе (ListView рисует лишь видимые строки) или отправке клиенту.
+ * Результат декодирования кэшируется. Сообщения самого обработчика создаются из String и кодируются лениво.
+ */
+public final class ConsoleLine implements CharSequence {
+    private byte[] utf8;
+    private String text;
+
+    private ConsoleLine(byte[] utf8, String text) {
+        this.utf8 = utf8;
+        this.text = text;
+    }
+
+    /**
+     * Копирует байты строки из буфера чтения.
+     */
+    public static ConsoleLine copyOf(byte[] buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, offset, bytes, 0, length);
+        return new ConsoleLine(bytes, null);
+    }
+
+    public static ConsoleLine of(String text) {
+        return new ConsoleLine(null, text);
+    }
+
+    /**
+     * Байты строки в UTF-8. Массив не копируется и не должен изменяться.
+     */
+    public byte[] bytes() {
+        byte[] b = utf8;
+        if (b == null) {
+            b = text.getBytes(StandardCharsets.UTF_8);
+            utf8 = b;
+        }
+        return b;
+    }
+
+    /**
+     * Содержит ли строка последовательность байтов. Строка при этом не декодируется.
+     */
+    public boolean contains(byte[] needle) {
+        return indexOf(bytes(), needle) >= 0;
+    }
+
+    /**
+     * Содержит ли строка любую из последовательностей байтов.
+     */
+    public boolean containsAny(byte[]... needles) {
+        byte[] b = bytes();
+        for (byte[] needle : needles) {
+            if (indexOf(b, needle) >= 0) return true;
+        }
+        return false;
+    }
+
+    public static int indexOf(byte[] haystack, byte[] needle) {
+        if (needle.length == 0) return 0;
+        byte first = needle[0];
+        int last = haystack.length - needle.length;
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (haystack[i] != first) continue;
+            for (int j = 1; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        String t = text;
+        if (t == null) {
+            // Гонка безвредна: в худшем случае строка будет декодирована дважды
+            t = new String(utf8, StandardCharsets.UTF_8);
+            text = t;
+        }
+        return t;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+}
@@ -0,0 +1,75 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Чтение вывода процесса по строкам на уровне байтов.
+ * Поток читается блоками в один переиспользуемый буфер, конец строки ищется прямо в байтах,
+ * и на каждую строку создаётся только её копия в {@link ConsoleLine} - без InputStreamReader,
+ * промежуточных char[] и декодирования. Окончания "\r\n" и "\n" обрабатываются одинаково.
+ */
+public class ConsoleLineReader {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // Строки длиннее режутся на части, чтобы одна бесконечная строка не съела память
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private final InputStream in;
+    private ByteBuffer buffer;
+    private boolean eof = false;
+
+    public ConsoleLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ConsoleLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+    }
+
+    /**
+     * Следующая строка без символов конца строки или null в конце потока.
+     */
+    public ConsoleLine readLine() throws IOException {
+        while (true) {
+            byte[] array = buffer.array();
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = start; i < limit; i++) {
+                if (array[i] == '\n') {
+                    buffer.position(i + 1);
+                    int end = i > start && array[i - 1] == '\r' ? i - 1 : i;
+                    return ConsoleLine.copyOf(array, start, end - start);
+                }
+            }
+
+            if (eof) {
+                if (start == limit) return null;
+                buffer.position(limit);
+                return ConsoleLine.copyOf(array, start, limit - start);
+            }
+            if (limit - start >= MAX_LINE_BYTES) {
+                buffer.position(limit);
+                return ConsoleLine.copyOf(array, start, limit - start);
+            }
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // Незаконченная строка заняла весь буфер - увеличиваем его
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_LINE_BYTES + 1));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read < 0) eof = true;
+        else buffer.position(buffer.position() + read);
+        buffer.flip();
+    }
+}
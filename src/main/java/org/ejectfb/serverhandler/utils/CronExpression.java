@@ -0,0 +1,139 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Расписание в формате cron из пяти полей: минута, час, день месяца, месяц, день недели.
+ * Поддерживаются *, списки через запятую, диапазоны a-b и шаг /n, а также @hourly, @daily,
+ * @weekly и @monthly. День недели - 0..7, где и 0, и 7 - воскресенье.
+ * Как в cron, если ограничены и день месяца, и день недели, подходит любой из них.
+ * Каждое поле хранится битовой маской, поэтому проверка времени - несколько битовых операций.
+ */
+public class CronExpression {
+    private final String expression;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59, "минута");
+        this.hours = parseField(fields[1], 0, 23, "час");
+        this.daysOfMonth = parseField(fields[2], 1, 31, "день месяца");
+        this.months = parseField(fields[3], 1, 12, "месяц");
+        long dow = parseField(fields[4], 0, 7, "день недели");
+        // 7 - тоже воскресенье
+        if ((dow & (1L << 7)) != 0) dow |= 1;
+        this.daysOfWeek = dow;
+        this.anyDayOfMonth = fields[2].startsWith("*");
+        this.anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    /**
+     * @throws IllegalArgumentException если выражение задано с ошибкой
+     */
+    public static CronExpression parse(String expression) {
+        String trimmed = expression.trim();
+        String normalized = switch (trimmed.toLowerCase(Locale.ROOT)) {
+            case "@hourly" -> "0 * * * *";
+            case "@daily", "@midnight" -> "0 0 * * *";
+            case "@weekly" -> "0 0 * * 0";
+            case "@monthly" -> "0 0 1 * *";
+            default -> trimmed;
+        };
+        String[] fields = normalized.split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("\"" + expression + "\": нужно пять полей - минута час день месяц день_недели");
+        }
+        return new CronExpression(trimmed, fields);
+    }
+
+    private static long parseField(String field, int min, int max, String name) {
+        long mask = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, name);
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                from = parseNumber(dash >= 0 ? part.substring(0, dash) : part, min, max, name);
+                // "5/15" - с 5 до конца диапазона
+                to = dash >= 0 ? parseNumber(part.substring(dash + 1), min, max, name) : slash >= 0 ? max : from;
+                if (to < from) throw new IllegalArgumentException(name + ": пустой диапазон " + part);
+            }
+            for (int value = from; value <= to; value += step) {
+                mask |= 1L << value;
+            }
+        }
+        return mask;
+    }
+
+    private static int parseNumber(String text, int min, int max, String name) {
+        try {
+            int value = Integer.parseInt(text);
+            if (value >= min && value <= max) return value;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(name + ": ожидалось число от " + min + " до " + max + ", получено \"" + text + "\"");
+    }
+
+    /**
+     * Ближайшее время срабатывания строго после after (с точностью до минуты).
+     * Время сверяется с местным, как у часов на стене: при переводе часов назад повторный час
+     * не даёт второго срабатывания, а время, выпавшее при переводе вперёд, сдвигается на величину перевода.
+     * @return null, если такого времени нет (например, 31 февраля)
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        LocalDateTime time = after.toLocalDateTime().truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        // Восемь лет с запасом покрывают 29 февраля в нужный день недели
+        LocalDateTime limit = time.plusYears(8);
+        while (time.isBefore(limit)) {
+            if (!has(months, time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!has(hours, time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!has(minutes, time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                // В повторный час остаёмся в смещении after, поэтому результат всегда позже after
+                return ZonedDateTime.ofLocal(time, after.getZone(), after.getOffset());
+            }
+        }
+        return null;
+    }
+
+    private boolean matchesDay(LocalDateTime time) {
+        boolean dom = has(daysOfMonth, time.getDayOfMonth());
+        // DayOfWeek: понедельник = 1 ... воскресенье = 7, в маске воскресенье - бит 0 (и 7)
+        boolean dow = has(daysOfWeek, time.getDayOfWeek().getValue() % 7);
+        // Поле, начинающееся с *, не считается ограничением дня - тогда нужны оба условия
+        return anyDayOfMonth || anyDayOfWeek ? dom && dow : dom || dow;
+    }
+
+    private static boolean has(long mask, int value) {
+        return (mask & (1L << value)) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
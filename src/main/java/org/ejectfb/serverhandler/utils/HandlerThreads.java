@@ -0,0 +1,83 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Единая модель потоков обработчика: блокирующий ввод-вывод (чтение процессов, отправка в Telegram,
+ * клиенты API) выполняется в пуле ввода-вывода, всё, что по времени, - в планировщике,
+ * а вычисления (поиск по архиву) - в общем пуле ForkJoin.
+ * На Java 21+ пул ввода-вывода создаёт виртуальные потоки; сборка остаётся на Java 17,
+ * поэтому они подключаются через reflection, а на старых JVM используется кэширующий пул.
+ */
+public class HandlerThreads {
+    private static final boolean VIRTUAL_THREADS = !Boolean.getBoolean("threads.noVirtual")
+            && virtualThreadFactory("probe") != null;
+
+    /**
+     * Пул для блокирующих задач: поток на задачу (виртуальный, если доступно).
+     */
+    public static ExecutorService newIoExecutor(String name) {
+        ThreadFactory virtual = VIRTUAL_THREADS ? virtualThreadFactory(name) : null;
+        if (virtual != null) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, virtual);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+            }
+        }
+        // Потоки переиспользуются между задачами, поэтому их число не растёт с перезапусками
+        return Executors.newCachedThreadPool(daemon(name));
+    }
+
+    /**
+     * Однопоточный планировщик на фоновом потоке.
+     */
+    public static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(daemon(name));
+    }
+
+    /**
+     * Пул для задач, нагружающих процессор: половина ядер на все серверы обработчика.
+     */
+    public static ForkJoinPool newCpuPool(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public static ThreadFactory daemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static boolean isVirtualThreadsEnabled() {
+        return VIRTUAL_THREADS;
+    }
+
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 17 или виртуальные потоки в режиме preview
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Область задач одного запуска сервера. Всё, что запущено или открыто для этого запуска,
+ * регистрируется здесь и отменяется одним вызовом {@link #close()}, поэтому после остановки
+ * не остаётся ни висящих задач, ни потоков. Добавленное в закрытую область отменяется сразу.
+ */
+public class TaskScope implements AutoCloseable {
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private boolean closed = false;
+
+    public synchronized <F extends Future<?>> F track(F future) {
+        if (closed) future.cancel(true);
+        else futures.add(future);
+        return future;
+    }
+
+    public synchronized <R extends AutoCloseable> R own(R resource) {
+        if (closed) closeQuietly(resource);
+        else resources.add(resource);
+        return resource;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+        // Ресурсы закрываются в обратном порядке открытия
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            closeQuietly(resources.get(i));
+        }
+        futures.clear();
+        resources.clear();
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            System.err.println("Ошибка закрытия ресурса: " + e.getMessage());
+        }
+    }
+}
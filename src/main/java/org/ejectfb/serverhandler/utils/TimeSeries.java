@@ -0,0 +1,152 @@
+package org.ejectfb.serverhandler.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Временной ряд на примитивных массивах с автоматическими агрегатами
+ * на трёх уровнях: 1 секунда, 1 минута, 1 час (min/max/avg).
+ * Каждый уровень - кольцо бакетов фиксированного размера, адрес бакета вычисляется
+ * из времени, поэтому запись и чтение одного бакета выполняются за O(1).
+ */
+public class TimeSeries {
+    /** Агрегат одного бакета. */
+    public static final class Aggregate {
+        public final long start;
+        public final double min;
+        public final double max;
+        public final double avg;
+        public final int count;
+
+        Aggregate(long start, double min, double max, double avg, int count) {
+            this.start = start;
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+            this.count = count;
+        }
+    }
+
+    private static final class Tier {
+        final long resolution;
+        final long[] bucketIndex;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        final int[] count;
+
+        Tier(long resolution, int capacity) {
+            this.resolution = resolution;
+            this.bucketIndex = new long[capacity];
+            this.min = new double[capacity];
+            this.max = new double[capacity];
+            this.sum = new double[capacity];
+            this.count = new int[capacity];
+            Arrays.fill(bucketIndex, -1);
+        }
+
+        void add(long timestamp, double value) {
+            long index = timestamp / resolution;
+            int slot = (int) (index % bucketIndex.length);
+            if (bucketIndex[slot] != index) {
+                // Бакет занят устаревшими данными - перезаписываем
+                bucketIndex[slot] = index;
+                min[slot] = value;
+                max[slot] = value;
+                sum[slot] = 0;
+                count[slot] = 0;
+            }
+            if (value < min[slot]) min[slot] = value;
+            if (value > max[slot]) max[slot] = value;
+            sum[slot] += value;
+            count[slot]++;
+        }
+
+        long retention() {
+            return resolution * bucketIndex.length;
+        }
+    }
+
+    public static final long SECOND = 1000L;
+    public static final long MINUTE = 60 * SECOND;
+    public static final long HOUR = 60 * MINUTE;
+
+    private final Tier[] tiers;
+
+    /**
+     * Хранение по умолчанию: 1 час посекундно, 2 недели поминутно, 90 дней почасово (~1 МБ).
+     */
+    public TimeSeries() {
+        this(3600, 14 * 24 * 60, 90 * 24);
+    }
+
+    public TimeSeries(int secondBuckets, int minuteBuckets, int hourBuckets) {
+        this.tiers = new Tier[] {
+                new Tier(SECOND, secondBuckets),
+                new Tier(MINUTE, minuteBuckets),
+                new Tier(HOUR, hourBuckets)
+        };
+    }
+
+    public synchronized void record(long timestamp, double value) {
+        for (Tier tier : tiers) {
+            tier.add(timestamp, value);
+        }
+    }
+
+    /**
+     * Возвращает бакеты за интервал [from, to] с самым подробным разрешением,
+     * которое ещё хранит данные за весь интервал. Пустые бакеты пропускаются.
+     */
+    public synchronized List<Aggregate> query(long from, long to) {
+        long now = System.currentTimeMillis();
+        Tier tier = tiers[tiers.length - 1];
+        for (Tier candidate : tiers) {
+            if (now - from <= candidate.retention()) {
+                tier = candidate;
+                break;
+            }
+        }
+        return query(tier, from, to);
+    }
+
+    /**
+     * Возвращает бакеты за интервал с заданным разрешением (SECOND, MINUTE или HOUR).
+     */
+    public synchronized List<Aggregate> query(long from, long to, long resolution) {
+        for (Tier tier : tiers) {
+            if (tier.resolution == resolution) return query(tier, from, to);
+        }
+        throw new IllegalArgumentException("Неизвестное разрешение: " + resolution);
+    }
+
+    /**
+     * Сводный агрегат за интервал или null, если данных нет.
+     */
+    public synchronized Aggregate summary(long from, long to) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0;
+        int count = 0;
+        for (Aggregate a : query(from, to)) {
+            min = Math.min(min, a.min);
+            max = Math.max(max, a.max);
+            sum += a.avg * a.count;
+            count += a.count;
+        }
+        return count == 0 ? null : new Aggregate(from, min, max, sum / count, count);
+    }
+
+    private List<Aggregate> query(Tier tier, long from, long to) {
+        List<Aggregate> result = new ArrayList<>();
+        long first = Math.max(from / tier.resolution, to / tier.resolution - tier.bucketIndex.length + 1);
+        for (long index = first; index <= to / tier.resolution; index++) {
+            int slot = (int) (index % tier.bucketIndex.length);
+            if (tier.bucketIndex[slot] != index || tier.count[slot] == 0) continue;
+            result.add(new Aggregate(index * tier.resolution, tier.min[slot], tier.max[slot],
+                    tier.sum[slot] / tier.count[slot], tier.count[slot]));
+        }
+        return result;
+    }
+}
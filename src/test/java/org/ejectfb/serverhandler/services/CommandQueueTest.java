@@ -0,0 +1,194 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.services.CommandQueue.Lane;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandQueueTest {
+    /** Задачи записи выполняются только по команде теста - так команды успевают накопиться в очереди. */
+    private static class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) task.run();
+        }
+    }
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private final StringWriter stdin = new StringWriter();
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> log = Collections.synchronizedList(new ArrayList<>());
+
+    private List<String> written() {
+        String text = stdin.toString();
+        return text.isEmpty() ? List.of() : List.of(text.split("\n"));
+    }
+
+    @Test
+    void highLanePreemptsQueuedNormalAndLow() {
+        CommandQueue queue = new CommandQueue(stdin, executor, sent::add, log::add);
+        queue.offer("list", Lane.LOW);
+        queue.offer("say 1", Lane.NORMAL);
+        queue.offer("say 2", Lane.NORMAL);
+        queue.offer("save-all", Lane.HIGH);
+        queue.offer("stop", Lane.HIGH);
+        assertEquals(5, queue.size());
+
+        executor.runAll();
+
+        assertEquals(List.of("save-all", "stop", "say 1", "say 2", "list"), written());
+        assertEquals(written(), sent);
+        assertEquals(5, queue.getWrittenCommands());
+        assertEquals(1, queue.getFlushes());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void batchIsWrittenContiguously() {
+        CommandQueue queue = new CommandQueue(stdin, executor, sent::add, log::add);
+        queue.offer("say before", Lane.NORMAL);
+        assertTrue(queue.offer(List.of("say 5", "save-off", "save-all"), Lane.NORMAL));
+        queue.offer("stop", Lane.HIGH);
+        queue.offer("say after", Lane.NORMAL);
+
+        executor.runAll();
+
+        // Срочная команда обгоняет пачку целиком, а не вклинивается в неё
+        assertEquals(List.of("stop", "say before", "say 5", "save-off", "save-all", "say after"), written());
+        assertEquals(written(), sent);
+        assertEquals(6, queue.getWrittenCommands());
+    }
+
+    @Test
+    void batchIsNotSplitAcrossFlushes() {
+        CommandQueue queue = new CommandQueue(stdin, executor, sent::add, log::add);
+        // Пачка оказывается на границе MAX_BATCH элементов очереди
+        for (int i = 0; i < 255; i++) queue.offer("say " + i, Lane.NORMAL);
+        queue.offer(List.of("a", "b", "c"), Lane.NORMAL);
+        queue.offer("d", Lane.NORMAL);
+
+        executor.runAll();
+
+        List<String> written = written();
+        assertEquals(259, written.size());
+        assertEquals(List.of("a", "b", "c", "d"), written.subList(255, 259));
+        assertEquals(2, queue.getFlushes());
+    }
+
+    @Test
+    void batchesFromConcurrentProducersDoNotInterleave() throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        try {
+            CommandQueue queue = new CommandQueue(stdin, io, sent::add, log::add);
+            int perProducer = 200;
+            CountDownLatch start = new CountDownLatch(1);
+            for (int p = 0; p < 4; p++) {
+                int producer = p;
+                producers.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        Lane lane = i % 3 == 0 ? Lane.HIGH : Lane.NORMAL;
+                        queue.offer(List.of(producer + " " + i + " begin", producer + " " + i + " end"), lane);
+                    }
+                });
+            }
+            start.countDown();
+            producers.shutdown();
+            assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+            io.shutdown();
+            assertTrue(io.awaitTermination(10, TimeUnit.SECONDS));
+
+            List<String> written = written();
+            assertEquals(4 * perProducer * 2, written.size());
+            for (int i = 0; i < written.size(); i += 2) {
+                String begin = written.get(i);
+                assertTrue(begin.endsWith(" begin"), begin);
+                assertEquals(begin.replace(" begin", " end"), written.get(i + 1));
+            }
+            assertEquals(0, queue.getDroppedCommands());
+        } finally {
+            producers.shutdownNow();
+            io.shutdownNow();
+        }
+    }
+
+    @Test
+    void writeErrorDropsRemainingCommands() {
+        Writer broken = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CommandQueue queue = new CommandQueue(broken, executor, sent::add, log::add);
+        queue.offer("say 1", Lane.NORMAL);
+        queue.offer("say 2", Lane.NORMAL);
+        queue.offer(List.of("say 3", "say 4"), Lane.LOW);
+
+        executor.runAll();
+
+        assertTrue(sent.isEmpty());
+        assertEquals(1, log.size());
+        // Пачка, на которой запись сломалась, тоже считается потерянной
+        assertEquals(4, queue.getDroppedCommands());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void closedQueueRejectsCommands() throws IOException {
+        CommandQueue queue = new CommandQueue(stdin, executor, sent::add, log::add);
+        queue.offer("say 1", Lane.NORMAL);
+        queue.close();
+
+        assertFalse(queue.offer("say 2", Lane.NORMAL));
+        executor.runAll();
+
+        assertEquals("", stdin.toString());
+        assertEquals(2, queue.getDroppedCommands());
+    }
+
+    @Test
+    void defaultLanes() {
+        assertEquals(Lane.HIGH, Lane.of("stop"));
+        assertEquals(Lane.HIGH, Lane.of("  Save-All flush"));
+        assertEquals(Lane.HIGH, Lane.of("save-off"));
+        assertEquals(Lane.NORMAL, Lane.of("say stop"));
+        assertEquals(Lane.NORMAL, Lane.of("stopwatch"));
+    }
+}
@@ -0,0 +1,181 @@
+package org.ejectfb.serverhandler.services;
+
+import org.ejectfb.serverhandler.utils.ConsoleLine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsoleBroadcastTest {
+
+    private static void publish(ConsoleBroadcast broadcast, int from, int to) {
+        for (int i = from; i < to; i++) broadcast.publish(ConsoleLine.of(String.valueOf(i)));
+    }
+
+    private static List<Integer> numbers(List<ConsoleLine> lines) {
+        List<Integer> numbers = new ArrayList<>(lines.size());
+        for (ConsoleLine line : lines) numbers.add(Integer.parseInt(line.toString()));
+        return numbers;
+    }
+
+    @Test
+    void readsFromCursorUpToMax() {
+        ConsoleBroadcast broadcast = new ConsoleBroadcast(8);
+        publish(broadcast, 0, 5);
+        List<ConsoleLine> out = new ArrayList<>();
+
+        long cursor = broadcast.read(0, out, 3);
+        assertEquals(3, cursor);
+        assertEquals(List.of(0, 1, 2), numbers(out));
+
+        cursor = broadcast.read(cursor, out, 100);
+        assertEquals(5, cursor);
+        assertEquals(List.of(0, 1, 2, 3, 4), numbers(out));
+
+        // Новых строк нет - курсор не двигается
+        assertEquals(5, broadcast.read(cursor, out, 100));
+        assertEquals(5, out.size());
+    }
+
+    @Test
+    void wraparoundKeepsOrderForReaderThatKeepsUp() {
+        ConsoleBroadcast broadcast = new ConsoleBroadcast(4);
+        List<ConsoleLine> out = new ArrayList<>();
+        long cursor = broadcast.head();
+        for (int i = 0; i < 50; i += 3) {
+            publish(broadcast, i, i + 3);
+            long next = broadcast.read(cursor, out, 100);
+            assertEquals(3, next - cursor);
+            cursor = next;
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 51; i++) expected.add(i);
+        assertEquals(expected, numbers(out));
+    }
+
+    @Test
+    void laggingReaderSkipsOverwrittenLines() {
+        ConsoleBroadcast broadcast = new ConsoleBroadcast(4);
+        publish(broadcast, 0, 10);
+        List<ConsoleLine> out = new ArrayList<>();
+
+        long cursor = 2;
+        long next = broadcast.read(cursor, out, 100);
+        assertEquals(10, next);
+        // В буфере остаются только последние 4 строки, остальные пропущены
+        assertEquals(List.of(6, 7, 8, 9), numbers(out));
+        assertEquals(4, next - cursor - out.size());
+    }
+
+    @Test
+    void laggingReaderWithSmallMaxCatchesUp() {
+        ConsoleBroadcast broadcast = new ConsoleBroadcast(4);
+        publish(broadcast, 0, 10);
+        List<ConsoleLine> out = new ArrayList<>();
+
+        long next = broadcast.read(0, out, 2);
+        assertEquals(8, next);
+        assertEquals(List.of(6, 7), numbers(out));
+        assertEquals(6, next - out.size());
+
+        // Пока подписчик обрабатывал строки, буфер ушёл вперёд
+        publish(broadcast, 10, 13);
+        out.clear();
+        long after = broadcast.read(next, out, 2);
+        assertEquals(List.of(9, 10), numbers(out));
+        assertEquals(1, after - next - out.size());
+    }
+
+    @Test
+    void tailCursor() {
+        ConsoleBroadcast broadcast = new ConsoleBroadcast(4);
+        assertEquals(0, broadcast.tailCursor(10));
+        publish(broadcast, 0, 3);
+        assertEquals(1, broadcast.tailCursor(2));
+        assertEquals(0, broadcast.tailCursor(10));
+        publish(broadcast, 3, 10);
+        assertEquals(6, broadcast.tailCursor(10));
+
+        List<ConsoleLine> out = new ArrayList<>();
+        assertEquals(10, broadcast.read(broadcast.tailCursor(10), out, 100));
+        assertEquals(List.of(6, 7, 8, 9), numbers(out));
+    }
+
+    @Test
+    void awaitReturnsWhenLineAppearsAndFalseAfterClose() throws Exception {
+        ConsoleBroadcast broadcast = new ConsoleBroadcast(4);
+        assertTrue(broadcast.await(0, 10));
+        publish(broadcast, 0, 1);
+        assertTrue(broadcast.await(0, 0));
+        broadcast.close();
+        assertFalse(broadcast.await(1, 10_000));
+    }
+
+    @Test
+    void concurrentReadersSeeLinesInOrderWithoutDuplicates() throws Exception {
+        int total = 200_000;
+        ConsoleLine[] lines = new ConsoleLine[total];
+        for (int i = 0; i < total; i++) lines[i] = ConsoleLine.of(String.valueOf(i));
+
+        ExecutorService readers = Executors.newFixedThreadPool(3);
+        try {
+            // Гонка записи и чтения проявляется не в каждом прогоне, поэтому прогонов несколько
+            for (int round = 0; round < 20; round++) {
+                // Маленький буфер, чтобы читатели постоянно отставали и ловили перезапись
+                ConsoleBroadcast broadcast = new ConsoleBroadcast(16);
+                List<Future<long[]>> results = new ArrayList<>();
+                for (int max : new int[]{1, 5, 16}) {
+                    results.add(readers.submit(() -> readAll(broadcast, total, max)));
+                }
+                for (ConsoleLine line : lines) broadcast.publish(line);
+                broadcast.close();
+
+                for (Future<long[]> result : results) {
+                    long[] counts = result.get(30, TimeUnit.SECONDS);
+                    assertEquals(total, counts[0] + counts[1], "прочитано + пропущено");
+                    assertTrue(counts[0] > 0);
+                }
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * Читает до конца и проверяет, что номера строк строго растут, а каждый разрыв
+     * совпадает с числом пропущенных строк, о котором сообщил read.
+     * @return прочитано и пропущено строк
+     */
+    private static long[] readAll(ConsoleBroadcast broadcast, int total, int max) throws InterruptedException {
+        List<ConsoleLine> out = new ArrayList<>();
+        long cursor = 0;
+        long read = 0;
+        long skipped = 0;
+        while (cursor < total) {
+            out.clear();
+            long next = broadcast.read(cursor, out, max);
+            long lost = next - cursor - out.size();
+            assertTrue(lost >= 0, "отрицательный пропуск");
+            // Пропуск бывает только в начале порции: дальше строки идут подряд до next
+            long expected = cursor + lost;
+            for (ConsoleLine line : out) {
+                assertEquals(expected, Long.parseLong(line.toString()));
+                expected++;
+            }
+            assertEquals(next, expected);
+            read += out.size();
+            skipped += lost;
+            cursor = next;
+            if (out.isEmpty() && !broadcast.await(cursor, 100) && broadcast.head() <= cursor) break;
+        }
+        return new long[]{read, skipped};
+    }
+}
@@ -0,0 +1,137 @@
+package org.ejectfb.serverhandler.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CronExpressionTest {
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static ZonedDateTime at(String local, ZoneId zone) {
+        return LocalDateTime.parse(local).atZone(zone);
+    }
+
+    private static ZonedDateTime next(String expression, String after) {
+        return CronExpression.parse(expression).next(at(after, UTC));
+    }
+
+    @Test
+    void nextIsStrictlyAfterAndTruncatedToMinute() {
+        assertEquals(at("2024-05-10T12:01", UTC), next("* * * * *", "2024-05-10T12:00"));
+        assertEquals(at("2024-05-10T12:01", UTC), next("* * * * *", "2024-05-10T12:00:59.999"));
+    }
+
+    @Test
+    void restrictedDayOfMonthAndDayOfWeekMatchEither() {
+        // 13-е число или пятница
+        CronExpression cron = CronExpression.parse("0 0 13 * 5");
+        // 2024-09-01 - воскресенье: ближайшая пятница 6-го раньше 13-го
+        assertEquals(at("2024-09-06T00:00", UTC), cron.next(at("2024-09-01T00:00", UTC)));
+        assertEquals(at("2024-09-13T00:00", UTC), cron.next(at("2024-09-06T00:00", UTC)));
+        // 13 октября - воскресенье, но подходит по числу
+        assertEquals(at("2024-10-13T00:00", UTC), cron.next(at("2024-10-11T00:00", UTC)));
+    }
+
+    @Test
+    void wildcardDayFieldRequiresBoth() {
+        // День месяца с * - подходят только понедельники нечётных чисел
+        CronExpression cron = CronExpression.parse("0 0 */2 * 1");
+        // 2024-09-02 - понедельник чётного числа, 09-09 - нечётного
+        assertEquals(at("2024-09-09T00:00", UTC), cron.next(at("2024-09-01T00:00", UTC)));
+        // Обычный * в дне недели не мешает дню месяца
+        assertEquals(at("2024-09-15T00:00", UTC), next("0 0 15 * *", "2024-09-01T00:00"));
+    }
+
+    @Test
+    void sundayIsBothZeroAndSeven() {
+        // 2024-09-01 - воскресенье
+        assertEquals(at("2024-09-08T00:00", UTC), next("0 0 * * 0", "2024-09-01T00:00"));
+        assertEquals(at("2024-09-08T00:00", UTC), next("0 0 * * 7", "2024-09-01T00:00"));
+        assertEquals(at("2024-09-07T00:00", UTC), next("0 0 * * 5-7", "2024-09-06T00:00"));
+    }
+
+    @Test
+    void aliases() {
+        assertEquals(at("2024-05-10T13:00", UTC), next("@hourly", "2024-05-10T12:00"));
+        assertEquals(at("2024-05-11T00:00", UTC), next("@daily", "2024-05-10T00:00"));
+        assertEquals(at("2024-05-11T00:00", UTC), next("@midnight", "2024-05-10T23:59"));
+        // 2024-05-10 - пятница
+        assertEquals(at("2024-05-12T00:00", UTC), next("@weekly", "2024-05-10T12:00"));
+        assertEquals(at("2024-06-01T00:00", UTC), next("@monthly", "2024-05-01T00:00"));
+        assertEquals(at("2024-06-01T00:00", UTC), next("@MONTHLY", "2024-05-01T00:00"));
+    }
+
+    @Test
+    void monthAndYearRollover() {
+        assertEquals(at("2025-01-01T00:00", UTC), next("@daily", "2024-12-31T23:59"));
+        // 31-е пропускает месяцы из 30 дней и февраль
+        assertEquals(at("2024-03-31T00:00", UTC), next("0 0 31 * *", "2024-01-31T00:00"));
+        assertEquals(at("2024-05-31T00:00", UTC), next("0 0 31 * *", "2024-03-31T00:00"));
+        assertEquals(at("2028-02-29T00:00", UTC), next("0 0 29 2 *", "2024-03-01T00:00"));
+        assertEquals(at("2025-01-15T06:00", UTC), next("0 6 15 1 *", "2024-01-15T06:00"));
+    }
+
+    @Test
+    void impossibleDateHasNoNextTime() {
+        assertNull(next("0 0 31 2 *", "2024-01-01T00:00"));
+        assertNull(next("0 0 30 2 *", "2024-01-01T00:00"));
+    }
+
+    @Test
+    void springForwardShiftsSkippedTime() {
+        // 31 марта 2024 в Берлине 02:00 сразу становится 03:00
+        CronExpression cron = CronExpression.parse("30 2 * * *");
+        ZonedDateTime shifted = cron.next(at("2024-03-31T01:00", BERLIN));
+        assertEquals(at("2024-03-31T03:30", BERLIN), shifted);
+        assertEquals(at("2024-04-01T02:30", BERLIN), cron.next(shifted));
+        assertEquals(at("2024-03-31T03:00", BERLIN), CronExpression.parse("@hourly").next(at("2024-03-31T01:00", BERLIN)));
+    }
+
+    @Test
+    void fallBackDoesNotRepeatTime() {
+        // 27 октября 2024 в Берлине час с 02:00 до 03:00 проходит дважды
+        CronExpression cron = CronExpression.parse("30 2 * * *");
+        ZonedDateTime first = cron.next(at("2024-10-27T01:00", BERLIN));
+        assertEquals(at("2024-10-27T02:30", BERLIN).withEarlierOffsetAtOverlap(), first);
+        assertEquals(ZoneOffset.ofHours(2), first.getOffset());
+        assertEquals(at("2024-10-28T02:30", BERLIN), cron.next(first));
+
+        // Начав во втором проходе часа, остаёмся в нём и не возвращаемся назад
+        ZonedDateTime second = at("2024-10-27T02:10", BERLIN).withLaterOffsetAtOverlap();
+        ZonedDateTime inRepeatedHour = CronExpression.parse("*/20 * * * *").next(second);
+        assertEquals(second.plusMinutes(10), inRepeatedHour);
+    }
+
+    @Test
+    void sequenceOfRunsIsIncreasingAcrossDstChanges() {
+        CronExpression cron = CronExpression.parse("*/15 * * * *");
+        ZonedDateTime time = at("2024-03-30T00:00", BERLIN);
+        ZonedDateTime end = at("2024-10-28T00:00", BERLIN);
+        while (time.isBefore(end)) {
+            ZonedDateTime next = cron.next(time);
+            if (!next.isAfter(time)) throw new AssertionError(next + " не позже " + time);
+            time = next;
+        }
+    }
+
+    @Test
+    void invalidExpressionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* 24 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * 0 * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * 13 *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * * 8"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("5-1 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("*/0 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("@yearly"));
+    }
+}